@@ -222,8 +222,14 @@ public final class QEvent {
         return this;
     }
     
+    /**
+     * Publishes the event through the given commands. Live commands hand it to the {@link QEventPublisher}, which may delay or skip it.
+     * Use {@link #addEvent(USCLBot.Commands)} to send the qaddevent immediately.
+     */
     public QEvent send(USCLBot.Commands tdCommands) throws ValidationException {
-        return addEvent(tdCommands);
+        validate();
+        tdCommands.publishEvent(this);
+        return this;
     }
 
     public QEvent addEvent(USCLBot.Commands tdCommands) throws ValidationException {
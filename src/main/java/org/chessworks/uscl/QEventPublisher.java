@@ -0,0 +1,168 @@
+package org.chessworks.uscl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import free.util.SafeRunnable;
+
+/**
+ * Publishes entries in the server's events list, keeping track of what each event slot currently shows.
+ *
+ * Rather than sending a qaddevent for every change, events are held for a short debounce period. If the same slot changes again meanwhile,
+ * only the latest version is sent. When the period ends, all waiting changes are sent together in a single admin bracket, and any whose
+ * qaddevent is identical to what the slot already shows are skipped.
+ *
+ * @author Doug Bateman
+ */
+public class QEventPublisher {
+
+    /** The form recorded for a slot which has been removed from the events list. */
+    private static final String REMOVED = "";
+
+    /** Used to send the events. Only used while holding {@link #sendLock}. */
+    private final USCLBot.Commands commands;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long debounceMillis;
+
+    /** The changes waiting to be sent, by slot. A null event means the slot is to be removed. */
+    private final Map<Integer, QEvent> pending = new TreeMap<Integer, QEvent>();
+
+    /** True if a flush has been scheduled for the pending changes. */
+    private boolean flushScheduled = false;
+
+    /** Serializes sending, so the sent forms are updated in the order the commands are sent. */
+    private final Object sendLock = new Object();
+
+    /** The qaddevent last sent for each slot, or REMOVED. Slots in an unknown state have no entry. Guarded by sendLock. */
+    private final Map<Integer, String> sentForms = new HashMap<Integer, String>();
+
+    /** The event last published for each slot. Guarded by this. */
+    private final Map<Integer, QEvent> published = new HashMap<Integer, QEvent>();
+
+    /**
+     * @param commands
+     *            Used to send the events to the server. This should be an instance of its own, as sends happen on the scheduler's thread.
+     * @param scheduler
+     *            Used to schedule sending the events once the debounce period ends.
+     * @param debounceMillis
+     *            How long, in milliseconds, changes are held before being sent.
+     */
+    public QEventPublisher(USCLBot.Commands commands, ScheduledExecutorService scheduler, long debounceMillis) {
+        this.commands = commands;
+        this.scheduler = scheduler;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Publishes the event in its slot, replacing any earlier event in the slot. The event is validated immediately, but sent once the
+     * debounce period ends.
+     */
+    public void publish(QEvent event) {
+        event.validate();
+        synchronized (this) {
+            int slot = event.getEventSlot();
+            pending.put(slot, event);
+            published.put(slot, event);
+            scheduleFlush();
+        }
+    }
+
+    /** Removes the event in the slot from the events list, once the debounce period ends. */
+    public synchronized void remove(int slot) {
+        pending.put(slot, null);
+        published.remove(slot);
+        scheduleFlush();
+    }
+
+    /** Returns the event last published in the slot, or null if none. */
+    public synchronized QEvent getPublished(int slot) {
+        return published.get(slot);
+    }
+
+    /**
+     * Rebuilds the events list between the given slots, inclusive, in one pass. Each slot is sent the given event, or removed if there is
+     * none. The server's current list is not trusted, so every slot is sent, even if unchanged. The changes are sent immediately.
+     *
+     * @param events
+     *            The events which should be listed, by slot.
+     * @return the number of events listed.
+     */
+    public int reconcile(Map<Integer, QEvent> events, int minSlot, int maxSlot) {
+        int count = 0;
+        for (QEvent event : events.values()) {
+            event.validate();
+        }
+        synchronized (sendLock) {
+            synchronized (this) {
+                for (int slot = minSlot; slot <= maxSlot; slot++) {
+                    QEvent event = events.get(slot);
+                    pending.put(slot, event);
+                    if (event != null) {
+                        published.put(slot, event);
+                        count++;
+                    } else {
+                        published.remove(slot);
+                    }
+                    sentForms.remove(slot);
+                }
+            }
+            flush();
+        }
+        return count;
+    }
+
+    /** Sends all waiting changes now. */
+    public void flush() {
+        synchronized (sendLock) {
+            Map<Integer, QEvent> changes;
+            synchronized (this) {
+                changes = new TreeMap<Integer, QEvent>(pending);
+                pending.clear();
+                flushScheduled = false;
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+            commands.beginAdminSession();
+            try {
+                for (Map.Entry<Integer, QEvent> entry : changes.entrySet()) {
+                    int slot = entry.getKey();
+                    QEvent event = entry.getValue();
+                    String form = (event == null) ? REMOVED : event.toString();
+                    if (form.equals(sentForms.get(slot))) {
+                        continue;
+                    }
+                    if (event == null) {
+                        QEvent.event(slot).removeEvent(commands);
+                    } else {
+                        event.addEvent(commands);
+                    }
+                    sentForms.put(slot, form);
+                }
+            } finally {
+                commands.endAdminSession();
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        Runnable task = new SafeRunnable() {
+
+            @Override
+            public void safeRun() {
+                flush();
+            }
+        };
+        scheduler.schedule(task, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+}
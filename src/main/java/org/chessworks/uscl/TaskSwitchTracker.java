@@ -1,27 +1,113 @@
 package org.chessworks.uscl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.chessworks.chess.model.Role;
 import org.chessworks.chess.services.UserService;
 import org.chessworks.chessclub.ChatType;
+import org.chessworks.uscl.inbound.DatagramDispatcher;
+import org.chessworks.uscl.inbound.DatagramHandler;
 import org.chessworks.uscl.model.Game;
+import org.chessworks.uscl.model.Player;
 import org.chessworks.uscl.services.TournamentService;
+import org.chessworks.uscl.util.SlidingWindowCounter;
 
-import free.chessclub.ChessclubConnection;
 import free.chessclub.level2.Datagram;
-import free.chessclub.level2.DatagramEvent;
-import free.chessclub.level2.DatagramListener;
+import free.util.SafeRunnable;
 
-public class TaskSwitchTracker implements DatagramListener {
+public class TaskSwitchTracker {
+
+    /** The longest digest sent to busters in one tell. Longer digests are cut short. */
+    private static final int DIGEST_LENGTH_LIMIT = 900;
+
+    /** The number of buckets each sliding window is divided into. */
+    private static final int WINDOW_BUCKETS = 20;
+
+    /** The events of one player named in a game's messages since the last digest. */
+    private static final class Offender {
+        final Player player;
+        int count;
+
+        Offender(Player player) {
+            this.player = player;
+        }
+    }
+
+    /** The fair-play events for one game since the last digest. */
+    private static final class Pending {
+        final Game game;
+        /**
+         * The players named, in the order they were first named. They're kept as they were when each event arrived, since a rematch or a
+         * substitute may change the game's players before the digest is sent.
+         */
+        final List<Offender> offenders = new ArrayList<Offender>(2);
+        int other;
+        String lastMessage;
+
+        Pending(Game game) {
+            this.game = game;
+        }
+
+        Offender offender(Player player) {
+            for (Offender o : offenders) {
+                if (o.player.getHandle().equalsIgnoreCase(player.getHandle())) {
+                    return o;
+                }
+            }
+            Offender o = new Offender(player);
+            offenders.add(o);
+            return o;
+        }
+    }
 
     /** Users with the busters role get notifications about task-switch events. */
     private Role bustersRole;
-    
-    private ChessclubConnection conn;
+
+    private DatagramDispatcher dispatcher;
     private USCLBot usclBot;
     private TournamentService tournamentService;
-    
+    private ScheduledExecutorService scheduler;
+
+    /** The game messages which report a fair-play event. Each is matched as plain text, in the same case, anywhere in the message. */
+    private String[] patterns = { " focus " };
+
+    /** How often, in seconds, the digest of recent events is sent to busters. */
+    private int digestSeconds = 30;
+
+    /** The length of the window, in minutes, over which events are totalled per player and per game. */
+    private int windowMinutes = 10;
+
+    /** All the patterns, compiled into one. */
+    private Pattern compiled;
+
+    /** Each thread's matcher for the compiled pattern, reset for each message rather than created anew. */
+    private final ThreadLocal<Matcher> matchers = new ThreadLocal<Matcher>() {
+
+        @Override
+        protected Matcher initialValue() {
+            return compiled.matcher("");
+        }
+    };
+
+    /** Events in the current window, by lowercase player handle. Guarded by this. */
+    private final Map<String, SlidingWindowCounter> playerCounts = new HashMap<String, SlidingWindowCounter>();
+
+    /** Events in the current window, by board number. Guarded by this. */
+    private final Map<Integer, SlidingWindowCounter> gameCounts = new HashMap<Integer, SlidingWindowCounter>();
+
+    /** Events since the last digest, by board number. Guarded by this. */
+    private Map<Integer, Pending> pending = new TreeMap<Integer, Pending>();
+
     /**
      * Sends a routine tell to busters/speedtrap. This is typically used to keep them informed of task-switch notifications. The usclBot uses atells
      * rather than regular tells, as this makes it easy for the manager to distinguish between tells sent by players (who expect a reply) and routine
@@ -31,20 +117,27 @@ public class TaskSwitchTracker implements DatagramListener {
         usclBot.broadcast(ChatType.PERSONAL_ADMIN_TELL, bustersRole, msg, args);
     }
 
+    /**
+     * Returns true if the game message reports a fair-play event, such as a task switch.
+     */
+    public boolean isFairPlayMessage(String message) {
+        return matchers.get().reset(message).find();
+    }
+
     /**
      * Handles incoming DG_GAME_MESSAGE datagrams from the server.
-     * 
+     *
      * The server sends this datagram anytime it wishes to print a message about
      * the game. Such messages include going forward/backwards/etc.. USCLBot is
      * a Speedtrap member and uses this datagram receive task-switch
      * notification messages.
-     * 
-     * If a task switch event occurs, the usclBot will alert the event channel so
-     * the tournament director can take appropriate action.
+     *
+     * If a task switch event occurs, it is counted against the game and the
+     * player named in the message. Busters receive a digest of recent events
+     * every few seconds, rather than a tell for each event.
      */
     public void processGameMessage(int gameNumber, String message) {
-        boolean taskSwitch = (message.contains(" focus "));
-        if (!taskSwitch)
+        if (!isFairPlayMessage(message))
             return;
         Game game = tournamentService.findGame(gameNumber);
         if (game == null) {
@@ -53,28 +146,174 @@ public class TaskSwitchTracker implements DatagramListener {
         if (!game.status.isPlaying()) {
             return;
         }
-        tellBusters("Task Switch in {0}: {1}", game.getStatusString(), message);
+        Player player = findOffender(game, message);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            counter(gameCounts, game.boardNumber).increment(now);
+            if (player != null) {
+                counter(playerCounts, player.getHandle().toLowerCase()).increment(now);
+            }
+            Pending p = pending.get(game.boardNumber);
+            if (p == null) {
+                p = new Pending(game);
+                pending.put(game.boardNumber, p);
+            }
+            if (player == null) {
+                p.other++;
+            } else {
+                p.offender(player).count++;
+            }
+            p.lastMessage = message;
+        }
+    }
+
+    /**
+     * Sends busters a digest of the events since the last digest, if there were any. Called periodically by the scheduler.
+     */
+    public void sendDigest() {
+        Map<Integer, Pending> events;
+        StringBuilder digest = new StringBuilder();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            events = pending;
+            pending = new TreeMap<Integer, Pending>();
+            int shown = 0;
+            for (Pending p : events.values()) {
+                StringBuilder line = new StringBuilder();
+                line.append(" ").append(p.game.getStatusString()).append(": ");
+                for (Offender o : p.offenders) {
+                    appendPlayer(line, o.player, o.count, now);
+                }
+                if (p.other > 0) {
+                    line.append(p.other).append(" unattributed, ");
+                }
+                line.append(count(gameCounts, p.game.boardNumber, now)).append(" on the board in ").append(windowMinutes);
+                line.append(" min. Last: ").append(p.lastMessage).append(".");
+                if (digest.length() + line.length() > DIGEST_LENGTH_LIMIT) {
+                    digest.append(" ... and ").append(events.size() - shown).append(" more games.");
+                    break;
+                }
+                digest.append(line);
+                shown++;
+            }
+            forgetIdle(now);
+        }
+        tellBusters("Task switches in the last {0}s:{1}", digestSeconds, digest);
     }
 
-    @Override
-    public void datagramReceived(DatagramEvent evt) {
-        Datagram datagram = evt.getDatagram();
-        int code = datagram.getId();
-        switch (code) {
-            case Datagram.DG_GAME_MESSAGE : {
+    public void start() throws IOException {
+        compiled = compile(patterns);
+        dispatcher.register(Datagram.DG_GAME_MESSAGE, "TaskSwitchTracker.gameMessage", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
                 int gameNumber = datagram.getInteger(0);
                 String message = datagram.getString(1);
                 processGameMessage(gameNumber, message);
             }
+        });
+        Runnable digest = new SafeRunnable() {
+
+            @Override
+            public void safeRun() {
+                sendDigest();
+            }
+        };
+        scheduler.scheduleWithFixedDelay(digest, digestSeconds, digestSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Compiles the patterns into a single pattern which matches any of them. Each is treated as plain text.
+     */
+    static Pattern compile(String[] patterns) {
+        StringBuilder regex = new StringBuilder();
+        for (String p : patterns) {
+            if (p.length() == 0) {
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(Pattern.quote(p));
+        }
+        if (regex.length() == 0) {
+            throw new IllegalArgumentException("At least one task switch pattern is required.");
         }
+        return Pattern.compile(regex.toString());
     }
-    
-    public void start() throws IOException {
-        conn.addDatagramListener(this, Datagram.DG_GAME_MESSAGE);
+
+    /** Returns the player the message is about, or null if it names neither player. */
+    private static Player findOffender(Game game, String message) {
+        if (startsWithHandle(message, game.whitePlayer)) {
+            return game.whitePlayer;
+        } else if (startsWithHandle(message, game.blackPlayer)) {
+            return game.blackPlayer;
+        }
+        if (containsHandle(message, game.whitePlayer)) {
+            return game.whitePlayer;
+        } else if (containsHandle(message, game.blackPlayer)) {
+            return game.blackPlayer;
+        }
+        return null;
+    }
+
+    private static boolean startsWithHandle(String message, Player player) {
+        String handle = player.getHandle();
+        return message.regionMatches(true, 0, handle, 0, handle.length());
+    }
+
+    /** Returns true if the message names the player anywhere, ignoring case. */
+    private static boolean containsHandle(String message, Player player) {
+        String handle = player.getHandle();
+        int last = message.length() - handle.length();
+        for (int i = 0; i <= last; i++) {
+            if (message.regionMatches(true, i, handle, 0, handle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendPlayer(StringBuilder line, Player player, int recent, long now) {
+        int total = count(playerCounts, player.getHandle().toLowerCase(), now);
+        line.append(player).append(" ").append(recent).append(" (").append(total).append(" in ").append(windowMinutes);
+        line.append(" min), ");
+    }
+
+    private <K> SlidingWindowCounter counter(Map<K, SlidingWindowCounter> counters, K key) {
+        SlidingWindowCounter c = counters.get(key);
+        if (c == null) {
+            c = new SlidingWindowCounter(TimeUnit.MINUTES.toMillis(windowMinutes), WINDOW_BUCKETS);
+            counters.put(key, c);
+        }
+        return c;
+    }
+
+    /** Returns the events within the window for the key, or 0 if it has no counter. */
+    private static <K> int count(Map<K, SlidingWindowCounter> counters, K key, long now) {
+        SlidingWindowCounter c = counters.get(key);
+        return (c == null) ? 0 : c.count(now);
     }
 
-    public void setConnection(ChessclubConnection conn) {
-        this.conn = conn;
+    /** Drops the counters which have had no events within the window. */
+    private void forgetIdle(long now) {
+        forgetIdle(playerCounts.values().iterator(), now);
+        forgetIdle(gameCounts.values().iterator(), now);
+    }
+
+    private static void forgetIdle(Iterator<SlidingWindowCounter> counters, long now) {
+        while (counters.hasNext()) {
+            if (counters.next().count(now) == 0) {
+                counters.remove();
+            }
+        }
+    }
+
+    public void setDatagramDispatcher(DatagramDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
     }
 
     public final void setUSCLBot(USCLBot bot) {
@@ -89,4 +328,39 @@ public class TaskSwitchTracker implements DatagramListener {
         this.tournamentService = tournamentService;
     }
 
+    /** Sets the scheduler used to send the digests. */
+    public void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the game messages which report a fair-play event. Each is matched as plain text, in the same case, anywhere in the message. This
+     * should only be set prior to calling start().
+     */
+    public synchronized void setPatterns(String[] patterns) {
+        this.patterns = patterns.clone();
+    }
+
+    /**
+     * Sets how often, in seconds, busters receive a digest of recent events. It must be at least 1. This should only be set prior to calling
+     * start().
+     */
+    public synchronized void setDigestSeconds(int digestSeconds) {
+        if (digestSeconds <= 0) {
+            throw new IllegalArgumentException("digestSeconds must be at least 1.");
+        }
+        this.digestSeconds = digestSeconds;
+    }
+
+    /**
+     * Sets the length of the window, in minutes, over which events are totalled per player and per game. It must be at least 1. This should
+     * only be set prior to calling start().
+     */
+    public synchronized void setWindowMinutes(int windowMinutes) {
+        if (windowMinutes <= 0) {
+            throw new IllegalArgumentException("windowMinutes must be at least 1.");
+        }
+        this.windowMinutes = windowMinutes;
+    }
+
 }
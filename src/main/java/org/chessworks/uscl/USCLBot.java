@@ -1,20 +1,26 @@
 package org.chessworks.uscl;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
-import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.security.PermitAll;
@@ -38,18 +44,39 @@ import org.chessworks.common.javatools.exceptions.BaseException;
 import org.chessworks.common.javatools.io.FileHelper;
 import org.chessworks.uscl.model.Game;
 import org.chessworks.uscl.model.GameState;
+import org.chessworks.uscl.model.MoveList;
+import org.chessworks.uscl.model.ObserverStats;
 import org.chessworks.uscl.model.Player;
 import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.inbound.DatagramDispatcher;
+import org.chessworks.uscl.inbound.DatagramHandler;
+import org.chessworks.uscl.inbound.DatagramRecorder;
+import org.chessworks.uscl.inbound.DatagramReplayer;
+import org.chessworks.uscl.inbound.InboundPriority;
+import org.chessworks.uscl.inbound.LoginBurst;
+import org.chessworks.uscl.inbound.MyGameResult;
+import org.chessworks.uscl.inbound.ObserverCoalescer;
+import org.chessworks.uscl.inbound.RoundSimulator;
+import org.chessworks.uscl.inbound.StartedObserving;
+import org.chessworks.uscl.inbound.StripedExecutor;
+import org.chessworks.uscl.outbound.CapturingSink;
+import org.chessworks.uscl.outbound.CommandMonitor;
+import org.chessworks.uscl.outbound.OutboundQueue;
+import org.chessworks.uscl.outbound.Priority;
+import org.chessworks.uscl.outbound.SettingCache;
+import org.chessworks.uscl.outbound.TokenBucket;
 import org.chessworks.uscl.services.InvalidPlayerException;
 import org.chessworks.uscl.services.InvalidTeamException;
 import org.chessworks.uscl.services.TournamentService;
 import org.chessworks.uscl.services.file.FileTournamentService;
 import org.chessworks.uscl.services.file.UsclSettingsService;
+import org.chessworks.uscl.services.simple.SimpleTournamentService;
+import org.chessworks.uscl.services.simple.SynchronizedTournamentService;
+import org.chessworks.uscl.util.LatencyHistogram;
+import org.chessworks.uscl.util.MessageTemplate;
 
 import free.chessclub.ChessclubConstants;
 import free.chessclub.level2.Datagram;
-import free.chessclub.level2.DatagramEvent;
-import free.chessclub.level2.DatagramListener;
 import free.util.SafeRunnable;
 
 /**
@@ -70,6 +97,10 @@ public class USCLBot {
     public static final int CHANNEL_USCL = 129;
     public static final int CHANNEL_CHESS_FM = 165;
     public static final int CHANNEL_EVENTS_GROUP = 399;
+    /** The longest command line accepted by the chess server. */
+    public static final int MAX_COMMAND_LENGTH = 1024;
+    /** When replaying datagrams offline, commands are captured rather than sent, so they're released as fast as the bot produces them. */
+    private static final int REPLAY_COMMANDS_PER_SECOND = 1000000;
     /**
      * The path to the file on disk where the configured bot settings are located. The path defaults to "USCL-Bot.properties", but can be changed by
      * setting the "usclbot.settingsFile" system property on the command-line: "-usclbot.settingsFile=myFile.properties".
@@ -96,6 +127,135 @@ public class USCLBot {
         bot.setAdminPass(adminPass);
     }
 
+    private static void loadOutboundSettings(Properties settings, USCLBot bot) {
+        String rate = settings.getProperty("outbound.commandsPerSecond", "50");
+        String burst = settings.getProperty("outbound.burstSize", "100");
+        String capacity = settings.getProperty("outbound.queueCapacity", "1000");
+        String settingWindow = settings.getProperty("outbound.settingWindowSeconds", "600");
+
+        System.out.println("Outbound Settings:");
+        System.out.println("outbound.commandsPerSecond = " + rate);
+        System.out.println("outbound.burstSize         = " + burst);
+        System.out.println("outbound.queueCapacity     = " + capacity);
+        System.out.println("outbound.settingWindowSeconds = " + settingWindow);
+        System.out.println();
+        bot.setOutboundRate(Double.parseDouble(rate));
+        bot.setOutboundBurst(Integer.parseInt(burst));
+        bot.setOutboundCapacity(Integer.parseInt(capacity));
+        bot.setSettingWindow(Integer.parseInt(settingWindow));
+    }
+
+    private static void loadLoginSettings(Properties settings, USCLBot bot) {
+        String idleGap = settings.getProperty("login.idleGapMillis", "750");
+        String maxWait = settings.getProperty("login.maxWaitMillis", "15000");
+
+        System.out.println("Login Settings:");
+        System.out.println("login.idleGapMillis = " + idleGap);
+        System.out.println("login.maxWaitMillis = " + maxWait);
+        System.out.println();
+        bot.setLoginIdleGap(Long.parseLong(idleGap));
+        bot.setLoginMaxWait(Long.parseLong(maxWait));
+    }
+
+    private static void loadInboundSettings(Properties settings, USCLBot bot) {
+        String stripes = settings.getProperty("inbound.stripes", "4");
+        String recordFile = settings.getProperty("inbound.recordFile", "");
+        String observerWindow = settings.getProperty("inbound.observerWindowMillis", "250");
+        String observerCapacity = settings.getProperty("inbound.observerCapacity", "10000");
+
+        System.out.println("Inbound Settings:");
+        System.out.println("inbound.stripes              = " + stripes);
+        System.out.println("inbound.recordFile           = " + recordFile);
+        System.out.println("inbound.observerWindowMillis = " + observerWindow);
+        System.out.println("inbound.observerCapacity     = " + observerCapacity);
+        System.out.println();
+        bot.setInboundStripes(Integer.parseInt(stripes));
+        bot.setObserverWindow(Long.parseLong(observerWindow));
+        bot.setObserverCapacity(Integer.parseInt(observerCapacity));
+        if (recordFile.length() > 0) {
+            bot.setRecordFile(new File(recordFile));
+        }
+    }
+
+    /**
+     * Replays a round through the bot, instead of connecting, if <tt>replay.file</tt> or <tt>simulate.boards</tt> is set. Returns true if a
+     * round was replayed.
+     */
+    private static boolean replay(Properties settings, USCLBot bot) throws IOException, InterruptedException, InvalidNameException {
+        String replayFile = settings.getProperty("replay.file", "");
+        String realTime = settings.getProperty("replay.realTime", "false");
+        String commandsFile = settings.getProperty("replay.commandsFile", "");
+        String simulateBoards = settings.getProperty("simulate.boards", "");
+        if (simulateBoards.length() > 0) {
+            replayFile = simulate(settings, bot, Integer.parseInt(simulateBoards)).getPath();
+        }
+        if (replayFile.length() == 0) {
+            return false;
+        }
+
+        System.out.println("Replay Settings:");
+        System.out.println("replay.file         = " + replayFile);
+        System.out.println("replay.realTime     = " + realTime);
+        System.out.println("replay.commandsFile = " + commandsFile);
+        System.out.println();
+        PrintWriter commandsOut = null;
+        if (commandsFile.length() > 0) {
+            commandsOut = new PrintWriter(new FileWriter(commandsFile));
+        }
+        try {
+            bot.replay(new File(replayFile), Boolean.parseBoolean(realTime), commandsOut);
+        } finally {
+            if (commandsOut != null) {
+                commandsOut.close();
+            }
+        }
+        return true;
+    }
+
+    private static void loadTaskSwitchSettings(Properties settings, TaskSwitchTracker tracker) {
+        String patterns = settings.getProperty("taskswitch.patterns", " focus ");
+        String digestSeconds = settings.getProperty("taskswitch.digestSeconds", "30");
+        String windowMinutes = settings.getProperty("taskswitch.windowMinutes", "10");
+
+        System.out.println("Task Switch Settings:");
+        System.out.println("taskswitch.patterns      = " + patterns);
+        System.out.println("taskswitch.digestSeconds = " + digestSeconds);
+        System.out.println("taskswitch.windowMinutes = " + windowMinutes);
+        System.out.println();
+        tracker.setPatterns(patterns.split("\\|"));
+        tracker.setDigestSeconds(Integer.parseInt(digestSeconds));
+        tracker.setWindowMinutes(Integer.parseInt(windowMinutes));
+    }
+
+    /**
+     * Replaces the bot's schedule with a simulated round of the given number of boards, and writes the datagrams for the round to a temporary
+     * recording, to be replayed.
+     */
+    private static File simulate(Properties settings, USCLBot bot, int boards) throws IOException, InvalidNameException {
+        String observers = settings.getProperty("simulate.observersPerBoard", "20");
+        String moves = settings.getProperty("simulate.movesPerGame", "80");
+        String moveMillis = settings.getProperty("simulate.moveMillis", "1000");
+        String seed = settings.getProperty("simulate.seed", "1");
+
+        System.out.println("Simulation Settings:");
+        System.out.println("simulate.boards             = " + boards);
+        System.out.println("simulate.observersPerBoard  = " + observers);
+        System.out.println("simulate.movesPerGame       = " + moves);
+        System.out.println("simulate.moveMillis         = " + moveMillis);
+        System.out.println("simulate.seed               = " + seed);
+        System.out.println();
+        RoundSimulator simulator = new RoundSimulator(boards, Integer.parseInt(observers), Integer.parseInt(moves), Long.parseLong(moveMillis),
+                Long.parseLong(seed));
+        SimpleTournamentService schedule = new SimpleTournamentService();
+        simulator.schedule(schedule);
+        bot.setTournamentService(new SynchronizedTournamentService(schedule));
+        File recording = File.createTempFile("USCL-Bot-simulation", ".dg");
+        recording.deleteOnExit();
+        int written = simulator.write(recording);
+        System.out.println("Simulated " + boards + " boards: " + written + " datagrams.");
+        return recording;
+    }
+
     public static Properties loadSettingsFile(String settingsFile) {
         Properties configuredSettings = FileHelper.loadExternalPropertiesFile(settingsFile, null);
         /* System properties will override the settings file. */
@@ -104,11 +264,15 @@ public class USCLBot {
         return configuredSettings;
     }
 
-    public static void main(String[] args) throws IOException, InvalidNameException {
+    public static void main(String[] args) throws IOException, InvalidNameException, InterruptedException {
         Properties settings = loadSettingsFile(SETTINGS_FILE);
 
         USCLBot bot = new USCLBot();
         loadConnectionSettings(settings, bot);
+        loadOutboundSettings(settings, bot);
+        loadInboundSettings(settings, bot);
+        loadLoginSettings(settings, bot);
+        loadTaskSwitchSettings(settings, bot.getTaskSwitchTracker());
 
         String managersFile = settings.getProperty("file.managers", "data/Managers.txt");
         String playersFile = settings.getProperty("file.players", "data/Players.txt");
@@ -136,8 +300,11 @@ public class USCLBot {
 
         bot.setTitleService(titleService);
         bot.setUserService(userService);
-        bot.setTournamentService(tournamentService);
+        bot.setTournamentService(new SynchronizedTournamentService(tournamentService));
         bot.setSettingsService(settingsService);
+        if (replay(settings, bot)) {
+            System.exit(0);
+        }
         bot.start();
     }
 
@@ -155,10 +322,94 @@ public class USCLBot {
     }
     
     /** Used to send commands to the chess server. Such as qtell, tell, reserve-game, etc. */
-    private Commands command = new LiveCommands();
+    private final Commands liveCommands = new LiveCommands();
+
+    /** While a manager runs the "test" command, the commands which echo back to the manager, for that thread only. */
+    private final ThreadLocal<Commands> testCommands = new ThreadLocal<Commands>();
     
     /** The underlying connection to the server. Uses Jin's connection library. */
     private Connection conn;
+
+    /** Routes datagrams received from the server to the bot's handlers, and those of other modules. */
+    private DatagramDispatcher dispatcher;
+
+    /** Schedules commands bound for the server, by priority and under the rate limit. */
+    private OutboundQueue outbound;
+
+    /**
+     * The maximum burst of commands sent to the server before the rate limit applies.
+     *
+     * @see #setOutboundBurst(int)
+     */
+    private int outboundBurst = 100;
+
+    /**
+     * The sustained rate, in commands per second, at which commands are sent to the server.
+     *
+     * @see #setOutboundRate(double)
+     */
+    private double outboundRate = 50;
+
+    /**
+     * The number of units of commands each outbound lane may hold before bulk units are dropped.
+     *
+     * @see #setOutboundCapacity(int)
+     */
+    private int outboundCapacity = 1000;
+
+    /**
+     * The number of worker threads which handle datagrams. Zero handles them on the connection's own thread.
+     *
+     * @see #setInboundStripes(int)
+     */
+    private int inboundStripes = 4;
+
+    /**
+     * How long, in milliseconds, observers arriving and leaving are gathered before they're applied to their games. Zero applies each as it
+     * arrives.
+     *
+     * @see #setObserverWindow(long)
+     */
+    private long observerWindow = 250;
+
+    /**
+     * The most observer changes gathered at once, in all games.
+     *
+     * @see #setObserverCapacity(int)
+     */
+    private int observerCapacity = 10000;
+
+    /** Gathers observers arriving and leaving each game. Null if they're applied as they arrive. */
+    private ObserverCoalescer observerCoalescer;
+
+    /**
+     * The file to record the datagrams received from the server to, or null to not record them.
+     *
+     * @see #setRecordFile(File)
+     */
+    private File recordFile;
+
+    /**
+     * How long each datagram waits to be handled, plus how long it takes. The commands a datagram triggers are only queued by then; the
+     * outbound queue records how long until they're written.
+     */
+    private final LatencyHistogram datagramLatency = new LatencyHistogram();
+
+    /** Records the datagrams received from the server. Null if they aren't being recorded, or recording failed. */
+    private volatile DatagramRecorder recorder;
+
+    /** Handles datagrams off the connection's thread, in parallel for different games. Null if datagrams are handled inline. */
+    private StripedExecutor stripes;
+
+    /** Remembers the commands recently sent to the server, and relays them to managers who ask to watch them. */
+    private final CommandMonitor commandMonitor = new CommandMonitor(500);
+
+    /**
+     * Remembers the settings last sent to the server for each player, so repeated settings needn't be sent again.
+     *
+     * @see #setSettingWindow(int)
+     */
+    private final SettingCache settingCache = new SettingCache(TimeUnit.SECONDS.toMillis(600));
     
     /**
      * The host name or I.P. address of the chess server.
@@ -179,6 +430,23 @@ public class USCLBot {
      * login from events that happen later (like a game starting that we want to announce). This setting makes that possible.
      */
     private volatile boolean loggingIn = true;
+
+    /** Tells when the burst of datagrams after login is over. Null once it's over. */
+    private volatile LoginBurst loginBurst;
+
+    /**
+     * How long, in milliseconds, the server must be quiet before the login burst is considered over.
+     *
+     * @see #setLoginIdleGap(long)
+     */
+    private long loginIdleGap = 750;
+
+    /**
+     * The longest time, in milliseconds, to wait for the login burst to end.
+     *
+     * @see #setLoginMaxWait(long)
+     */
+    private long loginMaxWait = 15000;
     
     /**
      * The user name used during login, such as guest.
@@ -196,6 +464,12 @@ public class USCLBot {
     
     /** The scheduler lets us schedule commands to execute at some future time. */
     private ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+    /**
+     * Publishes the events list. Changes to an event are held for a second, so rapid changes are sent as one. It has its own commands
+     * instance, since it sends from the scheduler's thread.
+     */
+    private final QEventPublisher eventPublisher = new QEventPublisher(new LiveCommands(), scheduler, 1000);
     
     /**
      * TitleService provides facts about known titles. For example that (IM) is short for "International Master".
@@ -256,16 +530,18 @@ public class USCLBot {
      */
     public void broadcast(ChatType tellType, Collection<User> users, String msg, Object... args) {
         if (args.length > 0) {
-            msg = MessageFormat.format(msg, args);
-        }
-        if (tellType.requiresAdmin) {
-            command.sendQuietly("admin {0}", adminPass);
+            msg = MessageTemplate.format(msg, args);
         }
-        for (User user : users) {
-            command.sendQuietly("{0} {1} {2}", tellType.command, user, msg);
-        }
-        if (tellType.requiresAdmin) {
-            command.sendQuietly("admin");
+        command().beginAdminSession();
+        try {
+            if (tellType.requiresAdmin) {
+                command().enterAdminMode();
+            }
+            for (User user : users) {
+                command().sendQuietly("{0} {1} {2}", tellType.command, user, msg);
+            }
+        } finally {
+            command().endAdminSession();
         }
     }
 
@@ -305,12 +581,12 @@ public class USCLBot {
             return;
         } catch (InvalidTeamException e) {
             replyError(teller, e);
-            command.tell(teller, "To create a new team, use the \"add-team\" command.  Usage: add-team XXX");
+            command().tell(teller, "To create a new team, use the \"add-team\" command.  Usage: add-team XXX");
             return;
         }
         tournamentService.flush();
-        command.tell(teller, "Done.  Player {0} has joined the \"{1}\".", player, player.getTeam());
-        command.tell(teller, "To set the player''s real name, use: \"set-player {0} name 2200\"", player);
+        command().tell(teller, "Done.  Player {0} has joined the \"{1}\".", player, player.getTeam());
+        command().tell(teller, "To set the player''s real name, use: \"set-player {0} name 2200\"", player);
         cmdShowPlayer(teller, player);
     }
 
@@ -327,7 +603,7 @@ public class USCLBot {
     public void cmdAddTeam(User teller, String teamCode) {
         Team team = tournamentService.findTeam(teamCode);
         if (team != null) {
-            command.tell(teller, "A team with name {0} already exists.", teamCode);
+            command().tell(teller, "A team with name {0} already exists.", teamCode);
             return;
         }
         try {
@@ -337,8 +613,8 @@ public class USCLBot {
             return;
         }
         tournamentService.flush();
-        command.tell(teller, "Done.  Team {0} has now been created.", team.getTeamCode());
-        command.tell(teller, "To set the team name, use: \"set-team {0} name New York Giants\"", team.getTeamCode());
+        command().tell(teller, "Done.  Team {0} has now been created.", team.getTeamCode());
+        command().tell(teller, "To set the team name, use: \"set-team {0} name New York Giants\"", team.getTeamCode());
         cmdShowTeam(teller, team);
     }
     
@@ -351,7 +627,7 @@ public class USCLBot {
         Formatter msg = new Formatter();
         msg.format("%s\\n", " ** The new preferred name for this command is: clear-games.");
         msg.format("%s\\n", " ** The old name (\"clear\") will continue to work.");
-        command.qtell(teller, msg);
+        command().qtell(teller, msg);
         cmdClearGames(teller);
     }
 
@@ -366,50 +642,29 @@ public class USCLBot {
     public void cmdClearGames(User teller) {
         tournamentService.clearSchedule();
         tournamentService.flush();
-        command.qtell(teller, " Okay, I''ve cleared the schedule.  Tell me \"show\" to see.");
-        command.sendCommand("-notify *");
+        command().qtell(teller, " Okay, I''ve cleared the schedule.  Tell me \"show\" to see.");
+        command().sendCommand("-notify *");
     }
 
     public void cmdCreateScript(User teller, int eventSlot, int board, Player player1, Player player2, StringBuffer timeControl) throws FileNotFoundException {
-        command.sendQuietly("qtell {0}  reserve-game {1} {2}", teller, player1, board);
-        command.sendQuietly("qtell {0}  reserve-game {1} {2}", teller, player2, board);
-        command.sendQuietly("qtell {0}  spoof {1} set open 1", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set open 1", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} match {2} u w0 white {3}", teller, player1, player2, timeControl);
-        command.sendQuietly("qtell {0}  spoof {1} accept {2}", teller, player2, player1);
-        command.sendQuietly("qtell {0}  spoof jimmys qset {1} isolated 1", teller, player1);
-        command.sendQuietly("qtell {0}  spoof jimmys qset {1} isolated 1", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} set examine 1", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set examine 1", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} set kib 0", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set kib 0", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} set allowkib 0", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set allowkib 0", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} set quietplay 2", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set quietplay 2", teller, player2);
-        command.sendQuietly("qtell {0}  spoof {1} set busy 2", teller, player1);
-        command.sendQuietly("qtell {0}  spoof {1} set busy 2", teller, player2);        
-        command.sendQuietly("qtell {0}  observe {1}", teller, board);
-        command.sendQuietly("qtell {0}  spoof roboadmin observe {1}", teller, board);
-        String player1Name = player1.getPreTitledHandle(USCL_RATING);
-        String player2Name = player2.getPreTitledHandle(USCL_RATING);
-        String qaddevent = QEvent.event(eventSlot)
-                .description("%-4s %s - %s", "LIVE", player1Name, player2Name)
-                .addWatchCommand("observe %d", board)
-                .allowGuests(true)
-                .toString();
-        command.sendQuietly("qtell {0}  {1}", teller, qaddevent);
+        Commands script = new MockCommands(teller);
+        script.beginAdminSession();
+        try {
+            setupBoard(script, eventSlot, board, player1, player2, timeControl);
+        } finally {
+            script.endAdminSession();
+        }
     }
 
     public void cmdTest(User teller, StringBuffer command) {
-        Commands oldValue = this.command;
+        Commands oldValue = testCommands.get();
         try {
-            this.command = new MockCommands(teller);
+            testCommands.set(new MockCommands(teller));
             String handle = teller.getHandle();
             String cmd = command.toString();
             onCommand(handle, cmd);
         } finally {
-            this.command = oldValue;
+            testCommands.set(oldValue);
         }
     }
     
@@ -433,43 +688,89 @@ public class USCLBot {
                 game.blackPlayer = temp;
             }
             game.eventSlot = eventSlot++;
-            game.observerCountCurrent = 0;
-            game.observerCountMax = 0;
+            game.observers.reset();
             game.needsAnnounce = true;
             game.status=GameState.NOT_STARTED;
             
-            Player player1 = game.whitePlayer;
-            Player player2 = game.blackPlayer;
-            int board = game.boardNumber;
-            command.sendAdminCommand("reserve-game {0} {1}", player1, board);
-            command.sendAdminCommand("reserve-game {0} {1}", player2, board);
-            command.sendAdminCommand("spoof {0} set open 1", player1);
-            command.sendAdminCommand("spoof {0} set open 1", player2);
-            command.sendAdminCommand("spoof {0} match {1} u w0 white {2}", player1, player2, timeControl);
-            command.sendAdminCommand("spoof {0} accept {1}", player2, player1);
-            command.sendAdminCommand("spoof jimmys qset {0} isolated 1", player1);
-            command.sendAdminCommand("spoof jimmys qset {0} isolated 1", player2);
-            command.sendAdminCommand("spoof {0} set examine 1", player1);
-            command.sendAdminCommand("spoof {0} set examine 1", player2);
-            command.sendAdminCommand("spoof {0} set kib 0", player1);
-            command.sendAdminCommand("spoof {0} set kib 0", player2);
-            command.sendAdminCommand("spoof {0} set allowkib 0", player1);
-            command.sendAdminCommand("spoof {0} set allowkib 0", player2);
-            command.sendAdminCommand("spoof {0} set quietplay 2", player1);
-            command.sendAdminCommand("spoof {0} set quietplay 2", player2);
-            command.sendAdminCommand("spoof {0} set busy 2", player1);
-            command.sendAdminCommand("spoof {0} set busy 2", player2);        
-            command.sendAdminCommand("observe {0}", board);
-            command.sendAdminCommand("spoof roboadmin observe {0}", board);
-            String player1Name = player1.getPreTitledHandle(USCL_RATING);
-            String player2Name = player2.getPreTitledHandle(USCL_RATING);
-            String qaddevent = QEvent.event(eventSlot)
-                    .description("%-4s %s - %s", "LIVE", player1Name, player2Name)
-                    .addWatchCommand("observe %d", board)
-                    .allowGuests(true)
-                    .toString();
-            command.sendAdminCommand(qaddevent);
+            setupBoard(command(), game.eventSlot, game.boardNumber, game.whitePlayer, game.blackPlayer, timeControl);
+        }
+    }
+
+    /**
+     * Sends the commands which start a game between two players on the given board: reserving the board, spoofing the players into the
+     * match, locking down chat, observing, and listing the game in the events list.
+     *
+     * Spoofs are grouped by player, so the packing stage in {@link Commands} can merge each player's settings into a single compound
+     * command. The only other change from the order managers know from create-script is that player2 is opened for matches first, so
+     * player1's own spoofs can be packed with his challenge.
+     */
+    void setupBoard(Commands c, int eventSlot, int board, Player player1, Player player2, StringBuffer timeControl) {
+        c.sendAdminCommand("reserve-game {0} {1}", player1, board);
+        c.sendAdminCommand("reserve-game {0} {1}", player2, board);
+        c.spoof(player2, "set open 1");
+        c.spoof(player1, "set open 1");
+        c.spoof(player1, "match {0} u w0 white {1}", player2, timeControl);
+        c.spoof(player2, "accept {0}", player1);
+        c.spoof("jimmys", "qset {0} isolated 1", player1);
+        c.spoof("jimmys", "qset {0} isolated 1", player2);
+        for (Player player : new Player[] { player1, player2 }) {
+            c.spoof(player, "set examine 1");
+            c.spoof(player, "set kib 0");
+            c.spoof(player, "set allowkib 0");
+            c.spoof(player, "set quietplay 2");
+            c.spoof(player, "set busy 2");
+        }
+        c.sendAdminCommand("observe {0}", board);
+        c.spoof("roboadmin", "observe {0}", board);
+        liveEvent(eventSlot, board, player1, player2).send(c);
+    }
+
+    /**
+     * Returns the events list entry for a game in progress (or about to begin) on the given board.
+     */
+    private QEvent liveEvent(int eventSlot, int board, Player player1, Player player2) {
+        String player1Name = player1.getPreTitledHandle(USCL_RATING);
+        String player2Name = player2.getPreTitledHandle(USCL_RATING);
+        return QEvent.event(eventSlot)
+                .description("%-4s %s - %s", "LIVE", player1Name, player2Name)
+                .addWatchCommand("observe %d", board)
+                .allowGuests(true);
+    }
+
+    /**
+     * Commands the bot to rebuild the live events list from the schedule, in one pass. Every slot between events-list-min-id and
+     * events-list-max-id is either listed with the game scheduled in that slot, or removed.
+     *
+     * Syntax: <tt>reconcile-events</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     */
+    public void cmdReconcileEvents(User teller) {
+        int minSlot = settingsService.getEventsListMinId();
+        int maxSlot = settingsService.getEventsListMaxId();
+        Map<Integer, QEvent> events = new HashMap<Integer, QEvent>();
+        for (Game game : tournamentService.findAllGames()) {
+            if (game.eventSlot < minSlot || game.eventSlot > maxSlot) {
+                continue;
+            }
+            QEvent event;
+            if (!game.status.isFinished()) {
+                event = liveEvent(game.eventSlot, game.boardNumber, game.whitePlayer, game.blackPlayer);
+            } else if (eventPublisher.getPublished(game.eventSlot) != null) {
+                /* Keep the examine command chosen when the game ended. */
+                event = eventPublisher.getPublished(game.eventSlot);
+            } else {
+                String whiteName = game.whitePlayer.getPreTitledHandle(USCL_RATING);
+                String blackName = game.blackPlayer.getPreTitledHandle(USCL_RATING);
+                event = QEvent.event(game.eventSlot)
+                        .description("%-4s %s - %s", game.status, whiteName, blackName)
+                        .allowGuests(true);
+            }
+            events.put(game.eventSlot, event);
         }
+        int listed = eventPublisher.reconcile(events, minSlot, maxSlot);
+        command().qtell(teller, " Okay, I''ve rebuilt events {0} through {1}, listing {2} games.", minSlot, maxSlot, listed);
     }
 
     /**
@@ -488,12 +789,12 @@ public class USCLBot {
      */
     public void cmdAnnounceMatch(User teller, Team team1, Team team2, int channel) {
         Collection<Game> games = tournamentService.findMatchGames(team1, team2);
-        command.tell(channel, "US Chess League - {0} vs {1}", team1.getRealName(), team2.getRealName());
+        command().tell(channel, "US Chess League - {0} vs {1}", team1.getRealName(), team2.getRealName());
         for (Game game : games) {
             String white = game.whitePlayer.getTitledRealName(USCL_RATING);
             String black = game.blackPlayer.getTitledRealName(USCL_RATING);
             String line = String.format("  %-13s - %s vs %s", game.getStatusString(), white, black);
-            command.tell(channel, line);
+            command().tell(channel, line);
         }
     }
     
@@ -518,15 +819,15 @@ public class USCLBot {
         if (game.status.isPlaying()) {
             String line = String.format("%s from %s is playing versus %s from %s - %s to watch!",
                     white, whiteCity, black, blackCity, status);
-            command.tell(channel, line);
+            command().tell(channel, line);
         } else if (game.status.isFinished()) {
             String line = String.format("%s from %s played %s from %s - Result %s!",
                     white, whiteCity, black, blackCity, status);
-            command.tell(channel, line);
+            command().tell(channel, line);
         } else {
             String line = String.format("%s from %s will play %s from %s - Status %s!",
                     white, whiteCity, black, blackCity, status);
-            command.tell(channel, line);
+            command().tell(channel, line);
         }
     }
     
@@ -544,10 +845,18 @@ public class USCLBot {
     public void cmdDoAllPlayers(User teller, StringBuffer command) {
         String cmd = command.toString();
         Collection<Player> players = tournamentService.findAllPlayers();
-        for (Player p : players) {
-            this.command.spoof(teller, cmd, p);
+        long dropped = outbound.getDroppedUnits(Priority.BULK);
+        Priority old = command().setPriority(Priority.BULK);
+        try {
+            for (Player p : players) {
+                command().spoof(teller, cmd, p);
+                command().leaveAdminMode();
+            }
+        } finally {
+            command().setPriority(old);
         }
-        this.command.qtell(teller, "Ran command for {0} players.", players.size());
+        command().qtell(teller, "Ran command for {0} players.", players.size());
+        reportDropped(teller, dropped);
     }
 
     /**
@@ -602,8 +911,29 @@ public class USCLBot {
      */
     public void cmdRefreshAllProfiles(User teller) {
         Collection<Player> players = tournamentService.findAllPlayers();
-        for (Player p : players) {
-            cmdRefreshProfile(teller, p);
+        long dropped = outbound.getDroppedUnits(Priority.BULK);
+        Priority old = command().setPriority(Priority.BULK);
+        try {
+            for (Player p : players) {
+                cmdRefreshProfile(teller, p);
+                command().leaveAdminMode();
+            }
+        } finally {
+            command().setPriority(old);
+        }
+        reportDropped(teller, dropped);
+    }
+
+    /**
+     * Tells the manager running a bulk job if any of its commands were dropped because the outbound queue was full.
+     *
+     * @param droppedBefore
+     *            The number of bulk units dropped before the job started.
+     */
+    private void reportDropped(User teller, long droppedBefore) {
+        long dropped = outbound.getDroppedUnits(Priority.BULK) - droppedBefore;
+        if (dropped > 0) {
+            command().tell(teller, "The outbound queue was full, so {0} players were skipped.  Please try again later.", dropped);
         }
     }
 
@@ -617,6 +947,8 @@ public class USCLBot {
      *            The user/manager issuing the command.
      */
     public void cmdRefreshProfile(User teller, Player player) {
+        /* The player may have edited his notes since the bot last set them, so the whole profile is sent again. */
+        settingCache.invalidate(player.getHandle());
         Team team = player.getTeam();
         Integer r = player.ratings().get(USCL_RATING);
 
@@ -627,18 +959,18 @@ public class USCLBot {
         String teamPage = player.getTeam().getWebsite();
         for (Title title : player.getTitles()) {
             if (SimpleTitleService.CHESSCLUB_TITLES.contains(title)) {
-                command.sendAdminCommand("+{0} {1}", title, player);
+                command().sendAdminCommand("+{0} {1}", title, player);
             }
         }
 
-        command.sendAdminCommand("set-other {0} 1 Name: {1}", player, playerName);
-        command.sendAdminCommand("set-other {0} 2 USCL rating: {1}", player, rating);
-        command.sendAdminCommand("set-other {0} 3 Profile page: {1}", player, playerPage);
-        command.sendAdminCommand("set-other {0} 4 ", player);
-        command.sendAdminCommand("set-other {0} 5 Team: {1}", player, teamName);
-        command.sendAdminCommand("set-other {0} 6 Team page: {1}", player, teamPage);
-        command.sendAdminCommand("set-other {0} 7", player);
-        command.sendAdminCommand("rating {0} standard {1}", player, rating);
+        command().sendAdminCommand("set-other {0} 1 Name: {1}", player, playerName);
+        command().sendAdminCommand("set-other {0} 2 USCL rating: {1}", player, rating);
+        command().sendAdminCommand("set-other {0} 3 Profile page: {1}", player, playerPage);
+        command().sendAdminCommand("set-other {0} 4 ", player);
+        command().sendAdminCommand("set-other {0} 5 Team: {1}", player, teamName);
+        command().sendAdminCommand("set-other {0} 6 Team page: {1}", player, teamPage);
+        command().sendAdminCommand("set-other {0} 7", player);
+        command().sendAdminCommand("rating {0} standard {1}", player, rating);
     }
 
     /**
@@ -655,9 +987,9 @@ public class USCLBot {
         boolean removed = tournamentService.removePlayer(player);
         tournamentService.flush();
         if (!removed) {
-            command.tell(teller, "I''m not able to find {0} in the tournament.", player);
+            command().tell(teller, "I''m not able to find {0} in the tournament.", player);
         } else {
-            command.tell(teller, "Done.  Player {0} is no longer in the tournament.", player);
+            command().tell(teller, "Done.  Player {0} is no longer in the tournament.", player);
         }
     }
 
@@ -675,10 +1007,10 @@ public class USCLBot {
         int playerCount = tournamentService.removeTeam(team);
         tournamentService.flush();
         if (playerCount < 0) {
-            command.tell(teller, "I''m not able to find {0} in the tournament.", team);
+            command().tell(teller, "I''m not able to find {0} in the tournament.", team);
         } else {
-            command.tell(teller, "Done.  Team {0} is no longer in the tournament.", team.getTeamCode());
-            command.tell(teller, "{0} players were also removed.", playerCount);
+            command().tell(teller, "Done.  Team {0} is no longer in the tournament.", team.getTeamCode());
+            command().tell(teller, "{0} players were also removed.", playerCount);
         }
     }
 
@@ -688,7 +1020,7 @@ public class USCLBot {
      * @deprecated
      */
     public void cmdReserveGame(User teller, String playerHandle, int boardNum) {
-        command.qtell(teller, " ** Use: schedule-game <board> <white> <black>");
+        command().qtell(teller, " ** Use: schedule-game <board> <white> <black>");
     }
 
     /**
@@ -725,13 +1057,13 @@ public class USCLBot {
     public void cmdScheduleGame(User teller, int eventSlot, int boardNum, Player white, Player black) throws IOException {
         tournamentService.scheduleGame(boardNum, eventSlot, white, black);
         tournamentService.flush();
-        command.sendCommand("+notify {0}", white);
-        command.sendCommand("+notify {0}", black);
-        command.sendAdminCommand("spoof {0} +notify {1}", teller, white);
-        command.sendAdminCommand("spoof {0} +notify {1}", teller, black);
-        command.sendAdminCommand("reserve-game {0} {1}", white, boardNum);
-        command.sendAdminCommand("reserve-game {0} {1}", black, boardNum);
-        command.tell(teller, "Okay, I''ve reserved board \"{0}\" for players \"{1}\" and \"{2}\".", boardNum, white, black);
+        command().sendCommand("+notify {0}", white);
+        command().sendCommand("+notify {0}", black);
+        command().spoof(teller, "+notify {0}", white);
+        command().spoof(teller, "+notify {0}", black);
+        command().sendAdminCommand("reserve-game {0} {1}", white, boardNum);
+        command().sendAdminCommand("reserve-game {0} {1}", black, boardNum);
+        command().tell(teller, "Okay, I''ve reserved board \"{0}\" for players \"{1}\" and \"{2}\".", boardNum, white, black);
     }
 
     /**
@@ -772,7 +1104,7 @@ public class USCLBot {
         } else if (ComparisionHelper.anyEquals(var, "web", "webpage", "website")) {
             player.setWebsite(value);
         } else {
-            command.tell(teller, "Unknown variable: " + var);
+            command().tell(teller, "Unknown variable: " + var);
             return;
         }
         cmdShowPlayer(teller, player);
@@ -806,7 +1138,7 @@ public class USCLBot {
         } else if (ComparisionHelper.anyEquals(var, "div", "division")) {
             team.setDivision(value);
         } else {
-            command.tell(teller, "Unknown variable: " + var);
+            command().tell(teller, "Unknown variable: " + var);
             return;
         }
         cmdShowTeam(teller, team);
@@ -828,7 +1160,126 @@ public class USCLBot {
      * @deprecated
      */
     public void cmdShowGames(User teller) {
-        command.qtell(teller, " ** Use: show-schedule");
+        command().qtell(teller, " ** Use: show-schedule");
+    }
+
+    /**
+     * Commands the bot to list the state of the outbound command queue: how many units of commands are waiting in each lane, how long they
+     * wait, and how much has been sent.
+     *
+     * Syntax: <tt>show-outbound</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     */
+    public void cmdShowOutbound(User teller) {
+        Formatter msg = new Formatter();
+        msg.format(" Outbound Queue:\\n");
+        msg.format("   %-12s %6s %6s %9s %9s %9s %7s %7s\\n", "Lane", "Queued", "Max", "Units", "Commands", "Avg Wait", "Over", "Dropped");
+        for (Priority p : Priority.values()) {
+            msg.format("   %-12s %6d %6d %9d %9d %7.1fms %7d %7d\\n", p, outbound.getQueuedUnits(p), outbound.getMaxQueuedUnits(p),
+                    outbound.getWrittenUnits(p), outbound.getWrittenCommands(p), outbound.getAverageWaitMillis(p),
+                    outbound.getOverCapacityUnits(p), outbound.getDroppedUnits(p));
+        }
+        msg.format(" Redundant settings skipped: %d\\n", settingCache.getSuppressedCount());
+        command().qtell(teller, msg);
+    }
+
+    /**
+     * Commands the bot to list the datagram handlers, with how many datagrams each has handled and how long they took.
+     *
+     * Syntax: <tt>show-datagrams</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     */
+    public void cmdShowDatagrams(User teller) {
+        Formatter msg = new Formatter();
+        msg.format(" Datagram Handlers:\\n");
+        msg.format("   %4s %-32s %9s %10s %9s %9s\\n", "DG", "Handler", "Count", "Total", "Avg", "Max");
+        for (DatagramDispatcher.Registration r : dispatcher.getRegistrations()) {
+            long count = r.getCount();
+            double avgMicros = (count == 0) ? 0 : r.getTotalNanos() / (count * 1e3);
+            msg.format("   %4d %-32s %9d %8.1fms %7.1fus %7.1fms\\n", r.getDatagramId(), r.getName(), count, r.getTotalNanos() / 1e6, avgMicros,
+                    r.getMaxNanos() / 1e6);
+        }
+        if (stripes != null) {
+            for (int i = 0; i < stripes.getStripeCount(); i++) {
+                msg.format("   Stripe %d: %d queued, %d handled\\n", i, stripes.getQueuedTasks(i), stripes.getCompletedTasks(i));
+            }
+            msg.format("   %-8s %6s %6s %9s %9s %9s\\n", "Lane", "Queued", "Max", "Handled", "Avg Wait", "Max Wait");
+            for (InboundPriority p : InboundPriority.values()) {
+                msg.format("   %-8s %6d %6d %9d %7.1fms %7.1fms\\n", p, stripes.getQueuedTasks(p), stripes.getMaxQueuedTasks(p),
+                        stripes.getStartedTasks(p), stripes.getAverageWaitMillis(p), stripes.getMaxWaitMillis(p));
+            }
+        }
+        if (observerCoalescer != null) {
+            msg.format("   Observer changes: %d gathered into %d batches, %d waiting\\n", observerCoalescer.getCoalesced(),
+                    observerCoalescer.getBatches(), observerCoalescer.getPending());
+        }
+        msg.format("   Latency, received to handled: %s\\n", formatLatency(datagramLatency));
+        msg.format("   Latency, received to reply sent: %s\\n", formatLatency(outbound.getDatagramLatency()));
+        command().qtell(teller, msg);
+    }
+
+    /**
+     * Commands the bot to list the most recent commands it sent to the server.
+     *
+     * Syntax: <tt>tail-commands 20 [spoof]</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     * @param count
+     *            The number of commands to list.
+     * @param filter
+     *            If given, only commands containing this text are listed.
+     */
+    public void cmdTailCommands(User teller, int count, StringBuffer filter) {
+        List<String> recent = commandMonitor.tail(count, filter.toString());
+        if (recent.isEmpty()) {
+            command().qtell(teller, " No matching commands.");
+            return;
+        }
+        Formatter msg = new Formatter();
+        msg.format(" Recent Commands:\\n");
+        for (String line : recent) {
+            msg.format("   %s\\n", line);
+        }
+        command().qtell(teller, msg);
+    }
+
+    /**
+     * Commands the bot to relay the commands it sends to the server to the manager, every few seconds. To reduce the traffic, the manager may
+     * ask for only one in every N commands, or only those containing certain text.
+     *
+     * Syntax: <tt>watch-commands 1 [spoof]</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     * @param sampleEvery
+     *            Relay one of every <tt>sampleEvery</tt> matching commands. Use 1 to see them all.
+     * @param filter
+     *            If given, only commands containing this text are relayed.
+     */
+    public void cmdWatchCommands(User teller, int sampleEvery, StringBuffer filter) {
+        commandMonitor.subscribe(teller.getHandle(), sampleEvery, filter.toString());
+        command().qtell(teller, " Okay, you're now watching the commands I send.");
+    }
+
+    /**
+     * Commands the bot to stop relaying its commands to the manager.
+     *
+     * Syntax: <tt>unwatch-commands</tt>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     */
+    public void cmdUnwatchCommands(User teller) {
+        if (commandMonitor.unsubscribe(teller.getHandle())) {
+            command().qtell(teller, " Okay, you're no longer watching my commands.");
+        } else {
+            command().qtell(teller, " You weren't watching my commands.");
+        }
     }
 
     /**
@@ -841,7 +1292,7 @@ public class USCLBot {
      */
     @PermitAll
     public void cmdShowSchedule(User teller) {
-        command.sendQuietly("qtell {0} {1}", teller, "Current Schedule:\\n");
+        command().sendQuietly("qtell {0} {1}", teller, "Current Schedule:\\n");
         Collection<Game> games = tournamentService.findAllGames();
         for (Game game : games) {
             int boardNum = game.boardNumber;
@@ -851,9 +1302,9 @@ public class USCLBot {
             String blackPlayer = game.blackPlayer.getHandle();
             String gameStatus = game.getStatusString();
             String msg = String.format("Board %2d: %18s%2s %18s%2s     %s", boardNum, whitePlayer, whiteStatus, blackPlayer, blackStatus, gameStatus);
-            command.sendQuietly("qtell {0}  {1}", teller, msg);
+            command().sendQuietly("qtell {0}  {1}", teller, msg);
         }
-        command.sendQuietly("qtell {0}", teller);
+        command().sendQuietly("qtell {0}", teller);
     }
 
     /**
@@ -874,7 +1325,7 @@ public class USCLBot {
         msg.format("   %6s: %s\\n", "Rating", ratingStr);
         msg.format("   %6s: %s\\n", "Team", player.getTeam());
         msg.format("   %6s: %s\\n", "Web", player.getWebsite());
-        command.qtell(teller, msg);
+        command().qtell(teller, msg);
     }
 
     /**
@@ -893,18 +1344,10 @@ public class USCLBot {
         msg.format("   %4s: %s\\n", "Web ", team.getWebsite());
         msg.format("   %4s: %s\\n", "Div ", team.getDivision());
         msg.format(" Team Members:\\n");
-        int indent = 0;
-        for (Player player : team.getPlayers()) {
-            int len = player.getHandle().length();
-            if (len > indent) {
-                indent = len;
-            }
-        }
-        String fmt = "   %s\\n";
-        for (Player player : team.getPlayers()) {
-            msg.format(fmt, player);
+        for (Player player : team.getPlayersByRating(USCL_RATING)) {
+            msg.format("   %s\\n", player);
         }
-        command.qtell(teller, msg);
+        command().qtell(teller, msg);
     }
 
     /**
@@ -925,22 +1368,56 @@ public class USCLBot {
      */
     public void cmdTakeBack(User teller, Game game, int halfmoves) {
         if (!game.status.isPlaying()) {
-            command.tell(teller, "Unable to takeback.  {0} isn't currently active.", game);
+            command().tell(teller, "Unable to takeback.  {0} isn't currently active.", game);
+            return;
+        }
+        int played = game.moves.size();
+        if (halfmoves > played) {
+            command().tell(teller, "Unable to takeback {0} moves.  Only {1} have been played in {2}.", halfmoves, played, game);
             return;
         }
         int remaining = halfmoves;
         while(remaining >= 2) {
-            command.spoof(game.whitePlayer, "takeback 2");
-            command.spoof(game.blackPlayer, "takeback 2");
+            command().spoof(game.whitePlayer, "takeback 2");
+            command().spoof(game.blackPlayer, "takeback 2");
             remaining-=2;
         }
         if (remaining==1) {
-            command.spoof(game.whitePlayer, "takeback");
-            command.spoof(game.blackPlayer, "takeback");
+            command().spoof(game.whitePlayer, "takeback");
+            command().spoof(game.blackPlayer, "takeback");
         }
-        command.tell(teller, "Taking back {0} moves in {1}.", halfmoves, game);
+        command().tell(teller, "Taking back {0} moves in {1}.", halfmoves, game);
     }
     
+    /**
+     * Commands the bot to list the moves played so far in a game, in Smith notation, as recorded while observing it.
+     *
+     * Syntax: <tt>show-moves <boardNum></tt><br/>
+     * Example: <tt>show-moves 10</tt><br/>
+     *
+     * @param teller
+     *            The user/manager issuing the command.
+     * @param game
+     *            The board where the game is played.
+     */
+    public void cmdShowMoves(User teller, Game game) {
+        int[] moves = game.moves.toArray();
+        int played = moves.length;
+        Formatter msg = new Formatter();
+        msg.format(" %s: %d half-moves\\n", game, played);
+        for (int i = 0; i < played; i += 2) {
+            if (i % 16 == 0) {
+                msg.format("%s %3d.", (i == 0) ? "" : "\\n", i / 2 + 1);
+            }
+            msg.format(" %s", MoveList.toSmith(moves[i]));
+            if (i + 1 < played) {
+                msg.format(" %s", MoveList.toSmith(moves[i + 1]));
+            }
+        }
+        msg.format("\\n");
+        command().qtell(teller, msg);
+    }
+
     /**
      * Commands the bot to simulate an unexpected internal error. This is used to verify the bot will respond semi-gracefully to unexpected problems.
      *
@@ -970,7 +1447,7 @@ public class USCLBot {
 		String val = settingValue.toString().trim();
 		try {
 			settingsService.setSettingAsString(settingName, val);
-			command.qtell(teller, " {0} set to {1}.", settingName, val);
+			command().qtell(teller, " {0} set to {1}.", settingName, val);
 		} catch (ConversionException e) {
 			replyError(teller, e);
 		}
@@ -997,13 +1474,13 @@ public class USCLBot {
     	for (Map.Entry<Object, Object> entry : vars.entrySet()) {
     		msg.format(pattern, entry.getKey(), entry.getValue());
     	}
-    	command.qtell(teller, msg);
+    	command().qtell(teller, msg);
     }
 	
 	public void cmdNuke(User teller, User victim) {
-        command.sendAdminCommand("nuke {0}", victim);
-        command.tell(teller, "{0} is now nuked.  But you also got caught in the blast radius.", victim);
-        command.sendAdminCommand("nuke {0}", teller);
+        command().sendAdminCommand("nuke {0}", victim);
+        command().tell(teller, "{0} is now nuked.  But you also got caught in the blast radius.", victim);
+        command().sendAdminCommand("nuke {0}", teller);
 	}
 
     /**
@@ -1021,7 +1498,7 @@ public class USCLBot {
         for (Player player : playersOnline) {
             msg.format("  %s \\n", player);
         }
-        command.qtell(teller, msg);
+        command().qtell(teller, msg);
     }
 
     /**
@@ -1030,7 +1507,7 @@ public class USCLBot {
      * @deprecated
      */
     public void cmdUnreserveGame(User teller, Player player) {
-        command.qtell(teller, " ** Use: cancel-game <player>");
+        command().qtell(teller, " ** Use: cancel-game <player>");
     }
 
     /**
@@ -1047,13 +1524,13 @@ public class USCLBot {
         Game game = tournamentService.cancelGame(player);
         tournamentService.flush();
         if (game == null) {
-            command.tell(teller, "Sorry, player \"{0}\" was not associated wtih any boards.", player);
+            command().tell(teller, "Sorry, player \"{0}\" was not associated wtih any boards.", player);
         } else {
-            command.tell(teller, "Okay, game \"{0} - {1} {2}\" is no longer scheduled.", game.boardNumber, game.whitePlayer, game.blackPlayer);
-            command.sendCommand("-notify {0}", game.whitePlayer);
-            command.sendCommand("-notify {0}", game.blackPlayer);
-            command.spoof(monitorRole, "-notify {0}", game.whitePlayer);
-            command.spoof(monitorRole, "-notify {0}", game.blackPlayer);
+            command().tell(teller, "Okay, game \"{0} - {1} {2}\" is no longer scheduled.", game.boardNumber, game.whitePlayer, game.blackPlayer);
+            command().sendCommand("-notify {0}", game.whitePlayer);
+            command().sendCommand("-notify {0}", game.blackPlayer);
+            command().spoof(monitorRole, "-notify {0}", game.whitePlayer);
+            command().spoof(monitorRole, "-notify {0}", game.blackPlayer);
         }
     }
 
@@ -1073,12 +1550,15 @@ public class USCLBot {
 
     /** Shuts down the bot with the given exit code, after sending this good-bye message. */
     public void exit(int code, String msg, Object... args) {
-        if (conn.isConnected()) {
+        if (conn != null && conn.isConnected()) {
             tellManagers(msg, args);
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-            }
+            command().leaveAdminMode();
+            eventPublisher.flush();
+            outbound.flush(5000);
+        }
+        DatagramRecorder r = recorder;
+        if (r != null) {
+            closeRecorder(r);
         }
         tournamentService.flush();
         userService.flush();
@@ -1103,21 +1583,25 @@ public class USCLBot {
      * method.
      */
     private void onCommand(String teller, String message) {
+        Commands session = command();
+        session.beginAdminSession();
         try {
             cmd.dispatch(teller, message);
         } catch (ConversionException e) {
             replyError(teller, e);
         } catch (NoSuchCommandException e) {
-            command.tell(teller, "I don''t understand.  Are you sure you spelled the command correctly?");
+            command().tell(teller, "I don''t understand.  Are you sure you spelled the command correctly?");
         } catch (SecurityException e) {
-            command.tell(teller, "I don''t understand.  Are you sure you spelled the command correctly?");
+            command().tell(teller, "I don''t understand.  Are you sure you spelled the command correctly?");
         } catch (BaseException e) {
             //TODO: We need something better than BaseException to capture user friendly messages.
             String msg = e.getMessage();
-            command.tell(teller, msg);
+            command().tell(teller, msg);
         } catch (Exception e) {
             reportException(teller, message, e);
-            command.tell(teller, "Uggg, something went wrong.  Unable to execute command.");
+            command().tell(teller, "Uggg, something went wrong.  Unable to execute command.");
+        } finally {
+            session.endAdminSession();
         }
     }
 
@@ -1128,26 +1612,83 @@ public class USCLBot {
         userName = conn.getUsername();
         tellManagers("I have arrived.");
         tellManagers("Running {0} version {1} built on {2}", BOT_RELEASE_NAME, BOT_RELEASE_NUMBER, BOT_RELEASE_DATE);
-        command.sendCommand("set noautologout 1");
-        command.sendCommand("set style 13");
-        command.sendCommand("-notify *");
+        command().sendCommand("set noautologout 1");
+        command().sendCommand("set style 13");
+        command().sendCommand("-notify *");
         Collection<Player> players = tournamentService.findScheduledPlayers();
         for (Player p : players) {
-            command.sendCommand("+notify {0}", p);
+            command().sendCommand("+notify {0}", p);
         }
-        conn.addDatagramListener(conn, Datagram.DG_NOTIFY_ARRIVED);
-        conn.addDatagramListener(conn, Datagram.DG_NOTIFY_LEFT);
+        registerNotifyHandlers();
+        new LoginWatcher().start();
+        System.out.println();
+    }
+
+    /**
+     * Registers the handlers for players on the bot's notify list arriving and departing. They're registered once the notify list has been
+     * reset.
+     */
+    private void registerNotifyHandlers() {
+        dispatcher.register(Datagram.DG_NOTIFY_ARRIVED, "notifyArrived", new DatagramHandler() {
 
-        Runnable task = new SafeRunnable() {
+            @Override
+            public void handle(Datagram datagram) {
+                String player = datagram.getString(0);
+                processPlayerArrived(player);
+            }
+        });
+        dispatcher.register(Datagram.DG_NOTIFY_LEFT, "notifyLeft", new DatagramHandler() {
 
             @Override
-            public void safeRun() {
-                onConnectSpamDone();
+            public void handle(Datagram datagram) {
+                String player = datagram.getString(0);
+                processPlayerDeparted(player);
             }
-        };
-        //In 2 seconds, call onConnectSpamDone().
-        scheduler.schedule(task, 4, TimeUnit.SECONDS);
-        System.out.println();
+        });
+    }
+
+    /**
+     * Watches for the end of the burst of datagrams the server sends after login, as told by a {@link LoginBurst}. Once it's over,
+     * {@link #onConnectSpamDone()} is called once the datagrams already received have been handled.
+     */
+    private class LoginWatcher extends SafeRunnable {
+
+        private final LoginBurst burst = new LoginBurst(System.nanoTime(), loginIdleGap, loginMaxWait);
+
+        private ScheduledFuture<?> future;
+
+        private boolean done = false;
+
+        public void start() {
+            loginBurst = burst;
+            future = scheduler.scheduleWithFixedDelay(this, 100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void safeRun() {
+            if (done) {
+                return;
+            }
+            long now = System.nanoTime();
+            LoginBurst.State state = burst.check(now, outbound.getLastWriteNanos(), outbound.isIdle());
+            if (state == LoginBurst.State.BUSY) {
+                return;
+            }
+            done = true;
+            future.cancel(false);
+            loginBurst = null;
+            if (state == LoginBurst.State.EXPIRED) {
+                qtellProgrammers("The server never fell quiet after login.  Assuming the login burst ended after {0} ms.",
+                        burst.getElapsedMillis(now));
+            }
+            afterHandled(new SafeRunnable() {
+
+                @Override
+                public void safeRun() {
+                    onConnectSpamDone();
+                }
+            });
+        }
     }
 
     /**
@@ -1160,6 +1701,16 @@ public class USCLBot {
      */
     public void onConnectSpamDone() {
         loggingIn = false;
+        DatagramRecorder r = recorder;
+        if (r != null) {
+            try {
+                r.markLoginComplete();
+            } catch (IOException e) {
+                recorder = null;
+                closeRecorder(r);
+                reportException(loginName, "Stopped recording datagrams.", e);
+            }
+        }
     }
 
     public void onDisconnected() {
@@ -1174,14 +1725,25 @@ public class USCLBot {
      * command. In this case, the datagram is always received as a result of starting to observe a game, and arrives immediately after
      * DG_STARTED_OBSERVING.
      *
-     * The bot uses the moves list to distinguish between new games and resumed ones. It then announces the game in the events channel. The bot also
-     * qsets the "isolated" variable for the players, to ensure they don't chat during the game.
+     * The bot records the moves in the game's {@link Game#moves move list}, which is then kept up to date by DG_SEND_MOVES. The moves list is also
+     * used to distinguish between new games and resumed ones. The bot then announces the game in the events channel. The bot also qsets the
+     * "isolated" variable for the players, to ensure they don't chat during the game.
+     *
+     * @param smithMoves
+     *            The moves played so far, in Smith notation.
      */
-    protected void processMoveList(int gameNumber, String initialPosition, int numHalfMoves) {
+    protected void processMoveList(int gameNumber, String initialPosition, String[] smithMoves) {
         Game game = tournamentService.findGame(gameNumber);
         if (game == null) {
             return;
         }
+        game.moves.clear();
+        for (String move : smithMoves) {
+            /* The rest of the list can't be trusted after a move that can't be read, but the game must still be announced. */
+            if (!addMove(game, move)) {
+                break;
+            }
+        }
         if (!game.needsAnnounce) {
             return;
         }
@@ -1189,18 +1751,60 @@ public class USCLBot {
         if (loggingIn) {
             return;
         }
-        boolean resumed = (numHalfMoves != 0);
+        boolean resumed = (smithMoves.length != 0);
         String startOrResume = (!resumed) ? "Started" : "Resumed";
         tellEventChannels("{0} vs {1}: {2} on board {3}.  To watch, type or click: \"observe {3}\".", game.whitePlayer, game.blackPlayer,
                 startOrResume, game.boardNumber);
         if (!resumed) {
-            command.sshout("{0} vs {1}: {2} on board {3}.  To watch, type or click: \"observe {3}\".  Results will be announced in channel 129.",
+            command().sshout("{0} vs {1}: {2} on board {3}.  To watch, type or click: \"observe {3}\".  Results will be announced in channel 129.",
                     game.whitePlayer, game.blackPlayer, startOrResume, game.boardNumber);
         }
-        command.sendCommand("qset {0} isolated 1", game.whitePlayer);
-        command.sendCommand("qset {0} isolated 1", game.blackPlayer);
-        command.sendAdminCommand("+kmuzzle {0}", game.whitePlayer);
-        command.sendAdminCommand("+kmuzzle {0}", game.blackPlayer);
+        command().sendCommand("qset {0} isolated 1", game.whitePlayer);
+        command().sendCommand("qset {0} isolated 1", game.blackPlayer);
+        command().sendAdminCommand("+kmuzzle {0}", game.whitePlayer);
+        command().sendAdminCommand("+kmuzzle {0}", game.blackPlayer);
+    }
+
+    /**
+     * Handles incoming DG_SEND_MOVES datagrams from the server.
+     *
+     * The server sends this datagram for each move made in a game the bot observes. The bot appends the move to the game's move list.
+     */
+    protected void processSendMoves(int gameNumber, String smithMove) {
+        Game game = tournamentService.findGame(gameNumber);
+        if (game == null) {
+            return;
+        }
+        addMove(game, smithMove);
+    }
+
+    /**
+     * Adds a move to the game's move list. A move which can't be read is reported to the programmers and skipped.
+     *
+     * @return true if the move was added.
+     */
+    private boolean addMove(Game game, String smithMove) {
+        try {
+            game.moves.addSmith(smithMove);
+            return true;
+        } catch (IllegalArgumentException e) {
+            qtellProgrammers("Unable to read move \"{0}\" on board {1}: {2}", smithMove, game.boardNumber, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Handles incoming DG_TAKEBACK and DG_BACKWARD datagrams from the server.
+     *
+     * The server sends these datagrams when moves are taken back in a game the bot observes. The bot removes the moves from the game's move
+     * list.
+     */
+    protected void processTakeBack(int gameNumber, int halfMoves) {
+        Game game = tournamentService.findGame(gameNumber);
+        if (game == null) {
+            return;
+        }
+        game.moves.back(halfMoves);
     }
 
     /**
@@ -1212,13 +1816,14 @@ public class USCLBot {
      * The bot uses this to both inform the event channel about the result, and to remove the "isolated" setting on players. The isolated setting on
      * the server ensures that two players can't receive tells or chat while they play.
      */
-    protected void processMyGameResult(int gameNumber, boolean becomesExamined, String gameResultCode, String scoreString, String descriptionString) {
-        Game game = tournamentService.findGame(gameNumber);
+    protected void processMyGameResult(MyGameResult result) {
+        Game game = tournamentService.findGame(result.getGameNumber());
         if (game == null) {
             return;
         }
-        /* Subtract USCL-Bot itself */
-        int observerCount = game.observerCountMax - 1;
+        String scoreString = result.getScoreString();
+        String descriptionString = result.getDescription();
+        ObserverStats observers = game.observers;
         boolean adjourned = (descriptionString.indexOf("adjourn") >= 0);
         if (adjourned) {
             game.status = GameState.ADJOURNED;
@@ -1232,7 +1837,7 @@ public class USCLBot {
             game.status = GameState.NOT_STARTED;
         } else {
             game.status = GameState.UNKNOWN;
-            alertManagers("Error: unexpected game status \"{0}\": {1}", gameResultCode, scoreString);
+            alertManagers("Error: unexpected game status \"{0}\": {1}", result.getGameResultCode(), scoreString);
         }
         tournamentService.updateGameStatus(game, game.status);
         if (game.status.isFinished()) {
@@ -1241,24 +1846,27 @@ public class USCLBot {
             String libraryHandle = settingsService.getLibraryHandle();
             int librarySlot = settingsService.getAndIncrementNextLibrarySlot();
             String examineCommand = String.format("examine %s %%%d", libraryHandle, librarySlot);
-            command.spoof(libraryHandle, "libsave {0} -1 %{1}", game.whitePlayer.getHandle(), librarySlot);
+            command().spoof(libraryHandle, "libsave {0} -1 %{1}", game.whitePlayer.getHandle(), librarySlot);
             QEvent.event(game.eventSlot)
                     .description("%-4s %s - %s", game.status, whiteName, blackName)
                     .addJoinCommand(examineCommand)
                     .allowGuests(true)
-                    .send(command);
-            tellEventChannelsAndManagers("{0} vs {1}: \"{2}\" : {3}  ({4} observers)", game.whitePlayer,
-                    game.blackPlayer, examineCommand, descriptionString, observerCount);
-            command.spoof(monitorRole, "-notify {0}", game.whitePlayer);
-            command.spoof(monitorRole, "-notify {0}", game.blackPlayer);
+                    .send(command());
+            tellEventChannelsAndManagers("{0} vs {1}: \"{2}\" : {3}  ({4})", game.whitePlayer,
+                    game.blackPlayer, examineCommand, descriptionString, observers);
+            command().spoof(monitorRole, "-notify {0}", game.whitePlayer);
+            command().spoof(monitorRole, "-notify {0}", game.blackPlayer);
         } else {
-            tellEventChannels("{0} vs {1}: {2}  ({3} observers)", game.whitePlayer, game.blackPlayer, descriptionString, observerCount);
+            tellEventChannels("{0} vs {1}: {2}  ({3})", game.whitePlayer, game.blackPlayer, descriptionString, observers);
         }
         if (!adjourned) {
-            command.sendCommand("qset {0} isolated 0", game.whitePlayer);
-            command.sendCommand("qset {0} isolated 0", game.blackPlayer);
-            command.sendAdminCommand("-kmuzzle {0}", game.whitePlayer);
-            command.sendAdminCommand("-kmuzzle {0}", game.blackPlayer);
+            /* Once the game is over, the players are free to change their own settings again. */
+            settingCache.invalidate(game.whitePlayer.getHandle());
+            settingCache.invalidate(game.blackPlayer.getHandle());
+            command().sendCommand("qset {0} isolated 0", game.whitePlayer);
+            command().sendCommand("qset {0} isolated 0", game.blackPlayer);
+            command().sendAdminCommand("-kmuzzle {0}", game.whitePlayer);
+            command().sendAdminCommand("-kmuzzle {0}", game.blackPlayer);
         }
         tournamentService.flush();
     }
@@ -1296,29 +1904,30 @@ public class USCLBot {
      * The server sends this datagram anytime a player on the bots notify list arrives on the server.
      */
     protected void processPlayerArrived(String name) {
+        settingCache.invalidate(name);
         Player player = tournamentService.findPlayer(name);
         if (player == null) {
             alertManagers("Arriving player {0} is on my notify list, but I don''t have him in the tournament roster.", name);
             return;
         }
-        player.setState(PlayerState.WAITING);
+        tournamentService.updatePlayerState(player, PlayerState.WAITING);
         Game game = tournamentService.findPlayerGame(player);
         if (game == null) return;
         if (game.status.isFinished()) return;
         if (loggingIn) {
-        	command.sendCommand("observe {0}", name);
+        	command().sendCommand("observe {0}", name);
         } else {
             tellManagers("{0} arrived.  Reserving board {1}.", name, game.boardNumber);
         }
-        command.sendAdminCommand("spoof {0} tell JudgeBot nowin", game.whitePlayer);
-        command.sendAdminCommand("spoof {0} tell JudgeBot nowin", game.blackPlayer);
-        command.sendAdminCommand("set-other {0} kib 0", game.blackPlayer);
-        command.sendAdminCommand("set-other {0} kib 0", game.whitePlayer);
-        command.sendAdminCommand("reserve-game {0} {1}", game.whitePlayer, game.boardNumber);
-        command.sendAdminCommand("reserve-game {0} {1}", game.blackPlayer, game.boardNumber);
+        command().spoof(game.whitePlayer, "tell JudgeBot nowin");
+        command().spoof(game.blackPlayer, "tell JudgeBot nowin");
+        command().sendAdminCommand("set-other {0} kib 0", game.blackPlayer);
+        command().sendAdminCommand("set-other {0} kib 0", game.whitePlayer);
+        command().sendAdminCommand("reserve-game {0} {1}", game.whitePlayer, game.boardNumber);
+        command().sendAdminCommand("reserve-game {0} {1}", game.blackPlayer, game.boardNumber);
         if (game.status.isAdjourned()) {
-            command.sendAdminCommand("spoof {0} match {1}", game.whitePlayer, game.blackPlayer);
-            command.sendAdminCommand("spoof {0} match {1}", game.blackPlayer, game.whitePlayer);
+            command().spoof(game.whitePlayer, "match {0}", game.blackPlayer);
+            command().spoof(game.blackPlayer, "match {0}", game.whitePlayer);
         }
     }
 
@@ -1328,12 +1937,13 @@ public class USCLBot {
      * The server sends this datagram anytime a player on the bots notify list disconnects from the server.
      */
     protected void processPlayerDeparted(String name) {
+        settingCache.invalidate(name);
         Player player = tournamentService.findPlayer(name);
         if (player == null) {
             alertManagers("Departing player {0} is on my notify list, but I don''t have him in the tournament roster.", name);
             return;
         }
-        player.setState(PlayerState.OFFLINE);
+        tournamentService.updatePlayerState(player, PlayerState.OFFLINE);
         Game game = tournamentService.findPlayerGame(player);
         if (!game.status.isFinished()) {
             tellManagers("{0} departed", name);
@@ -1351,18 +1961,19 @@ public class USCLBot {
         if (game == null) {
             return;
         }
+        /* The bot's own observation isn't counted. */
+        if (playerHandle.equalsIgnoreCase(userName)) {
+            return;
+        }
         switch (state) {
             case WAITING:
-                game.observerCountCurrent--;
+                game.observers.observerLeft(playerHandle);
                 break;
             case OBSERVING:
-                game.observerCountCurrent++;
-                if (game.observerCountMax < game.observerCountCurrent) {
-                    game.observerCountMax = game.observerCountCurrent;
-                }
+                game.observers.observerArrived(playerHandle);
             //Fall through...
             case PLAYING:
-               // command.qChanPlus(playerHandle, CHANNEL_USCL);
+               // command().qChanPlus(playerHandle, CHANNEL_USCL);
             default:
         }
     }
@@ -1377,11 +1988,11 @@ public class USCLBot {
         Player p = tournamentService.findPlayer(player);
         if (p == null)
             return;
-        p.setState(state);
+        tournamentService.updatePlayerState(p, state);
         if (state.isPlaying()) {
-            command.sendCommand("observe {0}", game);
+            command().sendCommand("observe {0}", game);
         } else {
-            command.sendCommand("unobserve {0}", player);
+            command().sendCommand("unobserve {0}", player);
         }
     }
 
@@ -1394,13 +2005,13 @@ public class USCLBot {
      * The bot simply stores information about the game and then waits for the move list to arrive. How the bot announces the game will depend on
      * whether it's a resumed adjourned game or a new game. And only by inspecting the move list can the bot make this determination.
      */
-    protected void processStartedObserving(int gameNumber, String whiteName, String blackName, int wildNumber, String ratingCategoryString,
-            boolean isRated, int whiteInitial, int whiteIncrement, int blackInitial, int blackIncrement, boolean isPlayedGame, String exString,
-            int whiteRating, int blackRating, long gameID, String whiteTitles, String blackTitles, boolean isIrregularLegality,
-            boolean isIrregularSemantics, boolean usesPlunkers, String fancyTimeControls) {
-        if (!isPlayedGame) {
+    protected void processStartedObserving(StartedObserving observing) {
+        if (!observing.isPlayedGame()) {
             return;
         }
+        int gameNumber = observing.getGameNumber();
+        String whiteName = observing.getWhiteName();
+        String blackName = observing.getBlackName();
         Player whitePlayer = tournamentService.findPlayer(whiteName);
         Player blackPlayer = tournamentService.findPlayer(blackName);
         if (whitePlayer == null) return;
@@ -1414,18 +2025,19 @@ public class USCLBot {
             alertManagers("I am totally confused.  I don't have a scheduled game for: {0} {1}", whiteName, blackName);
             return;
         }
+        game.whitePlayer = whitePlayer;
+        game.blackPlayer = blackPlayer;
         tournamentService.updateGameStatus(game, GameState.PLAYING);
         tournamentService.flush();
         game.needsAnnounce = true;
-        game.whitePlayer = whitePlayer;
-        game.blackPlayer = blackPlayer;
-        game.observerCountCurrent = 0;
-        command.spoof("ROBOadmin", "observe {0}", gameNumber);
-        command.sendAdminCommand("spoof {0} set busy 2", whitePlayer);
-        command.sendAdminCommand("spoof {0} set busy 2", blackPlayer);
-        command.qsuggest("USCLTD", "observe {0}", gameNumber);
-        command.sendAdminCommand("spoof {0} ;-notify USCL; +notify USCLTD", whitePlayer);
-        command.sendAdminCommand("spoof {0} ;-notify USCL; +notify USCLTD", blackPlayer);
+        game.observers.reset();
+        command().spoof("ROBOadmin", "observe {0}", gameNumber);
+        for (Player player : new Player[] { whitePlayer, blackPlayer }) {
+            command().spoof(player, "set busy 2");
+            command().spoof(player, "-notify USCL");
+            command().spoof(player, "+notify USCLTD");
+        }
+        command().qsuggest("USCLTD", "observe {0}", gameNumber);
         /* Announcement will occur when the move list arrives, since we can then tell if it's a resumed game. */
     }
 
@@ -1440,7 +2052,7 @@ public class USCLBot {
      */
     public void replyError(String teller, Throwable t) {
         t.printStackTrace(System.err);
-        command.tell(teller, "Error - " + t.getMessage());
+        command().tell(teller, "Error - " + t.getMessage());
     }
 
     /**
@@ -1449,7 +2061,7 @@ public class USCLBot {
      */
     public void replyError(User teller, Throwable t) {
         t.printStackTrace(System.err);
-        command.tell(teller, "Error - " + t.getMessage());
+        command().tell(teller, "Error - " + t.getMessage());
     }
 
     /**
@@ -1518,6 +2130,101 @@ public class USCLBot {
         this.loginPass = loginPass;
     }
 
+    /**
+     * Sets the maximum burst of commands sent to the server before the rate limit applies. The default value is 100. This should only be set
+     * prior to calling {@link #start()}.
+     */
+    public synchronized void setOutboundBurst(int outboundBurst) {
+        this.outboundBurst = outboundBurst;
+    }
+
+    /**
+     * Sets how long, in seconds, a setting sent to the server (such as "set busy 2" or "qset isolated 1") is trusted to still be in
+     * force. Sending the same setting again within this time is skipped. The default value is 600 seconds.
+     */
+    public void setSettingWindow(int seconds) {
+        settingCache.setWindowMillis(TimeUnit.SECONDS.toMillis(seconds));
+    }
+
+    /**
+     * Sets how long, in milliseconds, the server must be quiet after login before the bot considers the initial burst of datagrams over and
+     * begins making announcements. The default value is 750. This should only be set prior to calling {@link #start()}.
+     */
+    public synchronized void setLoginIdleGap(long loginIdleGap) {
+        this.loginIdleGap = loginIdleGap;
+    }
+
+    /**
+     * Sets the longest time, in milliseconds, to wait for the server to fall quiet after login. The default value is 15000. This should only
+     * be set prior to calling {@link #start()}.
+     */
+    public synchronized void setLoginMaxWait(long loginMaxWait) {
+        this.loginMaxWait = loginMaxWait;
+    }
+
+    /**
+     * Sets the file to record the datagrams received from the server to, so the round can be replayed offline. This should only be set prior
+     * to calling start().
+     */
+    public synchronized void setRecordFile(File recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    /**
+     * Returns the module which tracks task-switch notifications, so it may be configured prior to calling start().
+     */
+    public TaskSwitchTracker getTaskSwitchTracker() {
+        return taskSwitchTracker;
+    }
+
+    /**
+     * Sets the number of worker threads which handle datagrams from the server. Datagrams for the same game (or the same player, if he has
+     * no game) are always handled by the same thread, in order. Tells, which carry manager commands, are handled while every thread is held,
+     * so commands never change a game while its datagrams are being handled. Zero handles all datagrams on the connection's thread. The
+     * default value is 4. This should only be set prior to calling {@link #start()}.
+     */
+    public synchronized void setInboundStripes(int inboundStripes) {
+        this.inboundStripes = inboundStripes;
+    }
+
+    /**
+     * Sets how long, in milliseconds, observers arriving and leaving are gathered before they're applied to their games as one batch. Zero
+     * applies each as it arrives. Gathering has no effect unless datagrams are handled by {@link #setInboundStripes(int) stripes}. The
+     * default value is 250. This should only be set prior to calling {@link #start()}.
+     */
+    public synchronized void setObserverWindow(long observerWindow) {
+        this.observerWindow = observerWindow;
+    }
+
+    /**
+     * Sets the most observer changes gathered at once, in all games. Once reached, the busiest game's changes are applied immediately. The
+     * default value is 10000. This should only be set prior to calling {@link #start()}.
+     */
+    public synchronized void setObserverCapacity(int observerCapacity) {
+        this.observerCapacity = observerCapacity;
+    }
+
+    /**
+     * Sets the number of units of commands each outbound lane may hold. Past that, bulk units are dropped, while more urgent units are
+     * queued anyway. Handlers never wait for room. The default value is 1000. This should only be set prior to calling {@link #start()}.
+     */
+    public synchronized void setOutboundCapacity(int outboundCapacity) {
+        this.outboundCapacity = outboundCapacity;
+    }
+
+    /** Sets the outbound queue, which is otherwise created by {@link #start()}. Used by tests. */
+    void setOutboundQueue(OutboundQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    /**
+     * Sets the sustained rate, in commands per second, at which commands are sent to the server. The default value is 50. This should only be
+     * set prior to calling {@link #start()}.
+     */
+    public synchronized void setOutboundRate(double outboundRate) {
+        this.outboundRate = outboundRate;
+    }
+
     /**
      * Injects the instance of {@link SimpleTitleService TitleService} to use. The {@link SimpleTitleService TitleService} service is used to convert
      * strings like "(IM)" into objects that provide additional information, such as the long form description "International Master".
@@ -1564,22 +2271,278 @@ public class USCLBot {
     public void start() throws IOException {
         System.out.println("Starting USCL-Bot...");
         System.out.println();
-        cmd.init();
         conn = new Connection(hostName, hostPort, loginName, loginPass);
-        conn.addDatagramListener(conn, Datagram.DG_PERSONAL_TELL);
-        conn.addDatagramListener(conn, Datagram.DG_NOTIFY_STATE);
-        conn.addDatagramListener(conn, Datagram.DG_MY_GAME_RESULT);
-        conn.addDatagramListener(conn, Datagram.DG_STARTED_OBSERVING);
-        conn.addDatagramListener(conn, Datagram.DG_MOVE_LIST);
-        conn.addDatagramListener(conn, Datagram.DG_SEND_MOVES);
-        conn.addDatagramListener(conn, Datagram.DG_PLAYERS_IN_MY_GAME);
-        conn.addDatagramListener(conn, Datagram.DG_GAME_MESSAGE);
+        startModules(conn, new TokenBucket(outboundRate, outboundBurst), conn);
+        if (recordFile != null) {
+            recorder = new DatagramRecorder(recordFile);
+            System.out.println("Recording datagrams to " + recordFile);
+        }
+        conn.initiateConnect(hostName, hostPort);
+    }
+
+    /**
+     * Replays datagrams recorded with the <tt>inbound.recordFile</tt> setting through the bot, offline, then prints how long they took to
+     * handle. The commands the bot sends in response are captured rather than sent to the server.
+     *
+     * The bot's data files are updated as the replayed games finish, just as they were when the round was recorded, so a replay should be run
+     * against copies of the data files.
+     *
+     * @param recording
+     *            The recorded datagrams.
+     * @param realTime
+     *            True to replay at the pace the datagrams were recorded. False to replay as fast as possible.
+     * @param commandsOut
+     *            Where to write the captured commands, or null to only count them.
+     */
+    public void replay(File recording, boolean realTime, PrintWriter commandsOut) throws IOException, InterruptedException {
+        System.out.println("Replaying " + recording + "...");
+        System.out.println();
+        CapturingSink sink = new CapturingSink(commandsOut);
+        startModules(sink, new TokenBucket(REPLAY_COMMANDS_PER_SECOND, REPLAY_COMMANDS_PER_SECOND), null);
+        registerNotifyHandlers();
+        userName = loginName;
+        Runnable loginComplete = new Runnable() {
+
+            @Override
+            public void run() {
+                afterHandled(new SafeRunnable() {
+
+                    @Override
+                    public void safeRun() {
+                        onConnectSpamDone();
+                    }
+                });
+            }
+        };
+        DatagramReplayer replayer = new DatagramReplayer(recording, realTime);
+        long started = System.nanoTime();
+        replayer.replay(dispatcher, loginComplete);
+        if (observerCoalescer != null) {
+            observerCoalescer.flushAll();
+        }
+        final CountDownLatch handled = new CountDownLatch(1);
+        afterHandled(new Runnable() {
+
+            @Override
+            public void run() {
+                handled.countDown();
+            }
+        });
+        handled.await();
+        long elapsed = System.nanoTime() - started;
+        eventPublisher.flush();
+        outbound.flush(5000);
+
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        Formatter report = new Formatter();
+        report.format("Replayed %d datagrams in %d ms: %.0f datagrams/second.%n", replayer.getReplayed(), millis,
+                replayer.getReplayed() * 1000.0 / millis);
+        report.format("Captured %d commands.%n", sink.getCaptured());
+        report.format("Latency, received to handled: %s%n", formatLatency(datagramLatency));
+        report.format("Latency, received to reply sent: %s%n", formatLatency(outbound.getDatagramLatency()));
+        if (stripes != null) {
+            for (InboundPriority p : InboundPriority.values()) {
+                report.format("  %-8s lane: %8d handled, %7.1f ms avg wait, %7.1f ms max wait, %6d max queued%n", p, stripes.getStartedTasks(p),
+                        stripes.getAverageWaitMillis(p), stripes.getMaxWaitMillis(p), stripes.getMaxQueuedTasks(p));
+            }
+        }
+        if (observerCoalescer != null) {
+            report.format("Observer changes: %d gathered into %d batches.%n", observerCoalescer.getCoalesced(), observerCoalescer.getBatches());
+        }
+        for (DatagramDispatcher.Registration r : dispatcher.getRegistrations()) {
+            long count = r.getCount();
+            long avgMicros = (count == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(r.getTotalNanos() / count);
+            report.format("  %-32s %8d handled, %6d us avg, %8d us max%n", r.getName(), count, avgMicros,
+                    TimeUnit.NANOSECONDS.toMicros(r.getMaxNanos()));
+        }
+        System.out.println(report);
+    }
+
+    private static String formatLatency(LatencyHistogram latency) {
+        return String.format("%.1fms avg, %.1fms p50, %.1fms p99, %.1fms max", latency.getMeanNanos() / 1e6,
+                latency.getPercentileNanos(0.50) / 1e6, latency.getPercentileNanos(0.99) / 1e6, latency.getMaxNanos() / 1e6);
+    }
+
+    /**
+     * Starts the bot's modules: the outbound queue, the datagram dispatcher and the datagram handlers.
+     *
+     * @param sink
+     *            Where the outbound queue sends commands.
+     * @param connection
+     *            The connection datagrams arrive from, or null if they are replayed offline.
+     */
+    private void startModules(OutboundQueue.Sink sink, TokenBucket limiter, free.chessclub.ChessclubConnection connection) throws IOException {
+        cmd.init();
+        outbound = new OutboundQueue(sink, limiter, outboundCapacity);
+        outbound.start();
+        commandMonitor.setOutboundQueue(outbound);
+        Runnable deliverEcho = new SafeRunnable() {
+
+            @Override
+            public void safeRun() {
+                commandMonitor.deliver();
+            }
+        };
+        scheduler.scheduleWithFixedDelay(deliverEcho, 2, 2, TimeUnit.SECONDS);
+        if (inboundStripes > 0) {
+            stripes = new StripedExecutor(inboundStripes, "USCL-Bot inbound");
+            if (observerWindow > 0) {
+                startObserverCoalescer();
+            }
+        }
+        dispatcher = new DatagramDispatcher(connection) {
+
+            /* The connection's thread only hands each datagram to the stripe for its game. */
+            @Override
+            public void receive(final Datagram datagram) {
+                final long received = System.nanoTime();
+                LoginBurst burst = loginBurst;
+                if (burst != null) {
+                    burst.received(datagram.getId(), received);
+                }
+                record(datagram);
+                if (stripes == null) {
+                    handle(datagram, received);
+                    return;
+                }
+                if (observerCoalescer != null && coalesce(datagram)) {
+                    return;
+                }
+                Runnable task = new SafeRunnable() {
+
+                    @Override
+                    public void safeRun() {
+                        handle(datagram, received);
+                    }
+                };
+                if (datagram.getId() == Datagram.DG_PERSONAL_TELL) {
+                    /* Commands may change any game, so they run while no game's datagrams are being handled. */
+                    stripes.executeExclusive(priorityOf(datagram), task);
+                } else {
+                    stripes.execute(stripeKey(datagram), priorityOf(datagram), task);
+                }
+            }
+
+            /* The commands the datagram triggers carry the time it was received. */
+            private void handle(Datagram datagram, long received) {
+                long old = command().setReceived(received);
+                try {
+                    dispatch(datagram);
+                } finally {
+                    command().setReceived(old);
+                    datagramLatency.record(System.nanoTime() - received);
+                }
+            }
+
+            /* Each datagram is handled in an admin session, so the admin commands it triggers share one admin bracket. */
+            @Override
+            public void dispatch(Datagram datagram) {
+                Commands session = command();
+                session.beginAdminSession();
+                try {
+                    super.dispatch(datagram);
+                } finally {
+                    session.endAdminSession();
+                }
+            }
+        };
+        registerDatagramHandlers();
         taskSwitchTracker.setUserService(userService);
         taskSwitchTracker.setTournamentService(tournamentService);
-        taskSwitchTracker.setConnection(conn);
+        taskSwitchTracker.setDatagramDispatcher(dispatcher);
         taskSwitchTracker.setUSCLBot(this);
+        taskSwitchTracker.setScheduler(scheduler);
         taskSwitchTracker.start();
-        conn.initiateConnect(hostName, hostPort);
+    }
+
+    /**
+     * Gathers observers arriving and leaving each game, and applies them as one batch per game every {@link #observerWindow} milliseconds.
+     */
+    private void startObserverCoalescer() {
+        ObserverCoalescer.Target target = new ObserverCoalescer.Target() {
+
+            @Override
+            public void apply(int gameNumber, ObserverStats.Batch batch) {
+                Game game = tournamentService.findGame(gameNumber);
+                if (game != null) {
+                    game.observers.apply(batch);
+                }
+            }
+        };
+        observerCoalescer = new ObserverCoalescer(stripes, target, observerCapacity);
+        Runnable flush = new SafeRunnable() {
+
+            @Override
+            public void safeRun() {
+                observerCoalescer.flushAll();
+            }
+        };
+        scheduler.scheduleWithFixedDelay(flush, observerWindow, observerWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Passes observers arriving and leaving a game to the coalescer, instead of handling them one datagram at a time. Before the datagrams
+     * which read or reset a game's observers, the observers gathered so far are flushed to the game's stripe, so they're applied first.
+     *
+     * @return true if the datagram was gathered, and needn't be handled.
+     */
+    private boolean coalesce(Datagram datagram) {
+        switch (datagram.getId()) {
+            case Datagram.DG_PLAYERS_IN_MY_GAME: {
+                PlayerState state = PlayerState.forCode(datagram.getString(2));
+                if (state != PlayerState.OBSERVING && state != PlayerState.WAITING) {
+                    return false;
+                }
+                String handle = datagram.getString(1);
+                /* The bot's own observation isn't counted. */
+                if (!handle.equalsIgnoreCase(userName)) {
+                    observerCoalescer.add(datagram.getInteger(0), handle, state == PlayerState.OBSERVING);
+                }
+                return true;
+            }
+            case Datagram.DG_STARTED_OBSERVING:
+            case Datagram.DG_MY_GAME_RESULT:
+                observerCoalescer.flush(datagram.getInteger(0));
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs the task once the datagrams already received have been handled.
+     */
+    private void afterHandled(Runnable task) {
+        if (stripes == null) {
+            task.run();
+        } else {
+            stripes.afterPending(task);
+        }
+    }
+
+    /**
+     * Adds the datagram to the recording, if datagrams are being recorded. If the recording fails, recording stops, but the bot carries on.
+     */
+    private void record(Datagram datagram) {
+        DatagramRecorder r = recorder;
+        if (r == null) {
+            return;
+        }
+        try {
+            r.record(datagram);
+        } catch (IOException e) {
+            recorder = null;
+            closeRecorder(r);
+            reportException(loginName, "Stopped recording datagrams.", e);
+        }
+    }
+
+    private static void closeRecorder(DatagramRecorder r) {
+        try {
+            r.close();
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+        }
     }
 
     /**
@@ -1589,10 +2552,10 @@ public class USCLBot {
         if (loggingIn)
             return;
         if (args.length > 0) {
-            msg = MessageFormat.format(msg, args);
+            msg = MessageTemplate.format(msg, args);
         }
-        command.tell(CHANNEL_USCL, msg);
-        command.tell(CHANNEL_EVENTS_GROUP, msg);
+        command().tell(CHANNEL_USCL, msg);
+        command().tell(CHANNEL_EVENTS_GROUP, msg);
     }
 
     /**
@@ -1602,11 +2565,11 @@ public class USCLBot {
         if (loggingIn)
             return;
         if (args.length > 0) {
-            msg = MessageFormat.format(msg, args);
+            msg = MessageTemplate.format(msg, args);
         }
-        command.tell(CHANNEL_USCL, msg);
-        command.tell(CHANNEL_EVENTS_GROUP, msg);
-        broadcast(ChatType.PERSONAL_ADMIN_TELL, monitorRole, msg, args);
+        command().tell(CHANNEL_USCL, msg);
+        command().tell(CHANNEL_EVENTS_GROUP, msg);
+        broadcast(ChatType.PERSONAL_ADMIN_TELL, monitorRole, msg);
     }
 
     /**
@@ -1615,13 +2578,70 @@ public class USCLBot {
      * tells sent by the bot.
      */
     public void tellManagers(String msg, Object... args) {
-        broadcast(ChatType.PERSONAL_ADMIN_TELL, monitorRole, msg, args);
-        command.tell(CHANNEL_EVENTS_GROUP, msg, args);
+        if (args.length > 0) {
+            msg = MessageTemplate.format(msg, args);
+        }
+        broadcast(ChatType.PERSONAL_ADMIN_TELL, monitorRole, msg);
+        command().tell(CHANNEL_EVENTS_GROUP, msg);
+    }
+
+    /**
+     * Returns the commands used to talk to the server from the current thread. This is normally the live connection, except while a manager
+     * runs the "test" command.
+     */
+    private Commands command() {
+        Commands test = testCommands.get();
+        return (test != null) ? test : liveCommands;
     }
 
     /** Used to send commands to the chess server. Such as qtell, tell, reserve-game, etc. */
     public abstract class Commands {
 
+        /**
+         * The admin session and spoof packing state of a single handler. Handlers run on several threads at once, so each thread has its
+         * own.
+         */
+        private class Session {
+
+            /** The nesting depth of {@link Commands#beginAdminSession()} calls. */
+            int adminSessionDepth = 0;
+
+            /**
+             * The commands sent since admin mode was turned on. They're held back until admin mode is turned off, and then handed to the
+             * server as a single unit, so no other commands may slip inside the admin bracket. Null when admin mode is off.
+             */
+            List<String> adminUnit = null;
+
+            /** True while an admin command is being sent, so it joins the admin unit instead of closing it. */
+            boolean sendingAdminCommand = false;
+
+            /** The outbound lane used for the admin unit. The highest priority of any command it contains. */
+            Priority adminUnitPriority;
+
+            /** The outbound lane used for commands sent by the current handler. */
+            Priority priority = Priority.CRITICAL;
+
+            /** When the datagram being handled was received, per {@link System#nanoTime()}, or {@link OutboundQueue#NO_DATAGRAM}. */
+            long received = OutboundQueue.NO_DATAGRAM;
+
+            /** The handle targeted by the spoofs waiting to be packed. Null if none are waiting. */
+            String spoofHandle = null;
+
+            /** The spoofed commands waiting to be packed, separated by "; ". */
+            final StringBuilder spoofCommands = new StringBuilder();
+
+            /** The number of spoofed commands waiting to be packed. */
+            int spoofCount = 0;
+        }
+
+        private final ThreadLocal<Session> sessions = new ThreadLocal<Session>() {
+
+            @Override
+            protected Session initialValue() {
+                return new Session();
+            }
+        };
+
         public void qChanPlus(String player, int channel) {
             sendQuietly("qchanplus {0} {1}", player, channel);
         }
@@ -1635,8 +2655,7 @@ public class USCLBot {
         }
 
         public void qtell(String handle, String pattern, Object... args) {
-            String qtell = MessageFormat.format(pattern, args);
-            sendQuietly("qtell {0} {1}\\n", handle, qtell);
+            sendQuietly(compose("qtell", handle, pattern, args).append("\\n").toString());
         }
 
         public void qtell(User user, Formatter qtell) {
@@ -1648,77 +2667,349 @@ public class USCLBot {
         }
 
         public void qtell(User user, String pattern, Object... args) {
-            String qtell = MessageFormat.format(pattern, args);
-            sendQuietly("qtell {0} {1}\\n", user, qtell);
+            sendQuietly(compose("qtell", user, pattern, args).append("\\n").toString());
         }
         
         public void qsuggest(User user, String pattern, Object... args) {
             if (loggingIn)
                 return;
-            String qtell = MessageFormat.format(pattern, args);
-            sendQuietly("qsuggest {0} {1}\\n", user, qtell);
+            sendQuietly(compose("qsuggest", user, pattern, args).append("\\n").toString());
         }
         
         public void qsuggest(String handle, String pattern, Object... args) {
             if (loggingIn)
                 return;
-            String qtell = MessageFormat.format(pattern, args);
-            sendQuietly("qsuggest {0} {1}\\n", handle, qtell);
+            sendQuietly(compose("qsuggest", handle, pattern, args).append("\\n").toString());
         }
         
+        /**
+         * Sends a command to the server with admin mode turned on.
+         *
+         * Outside an admin session, the command is bracketed by its own "admin" on/off pair. Inside a session, admin mode is turned on
+         * the first time it's needed and left on until the session ends or another kind of command is sent, so a run of admin commands
+         * shares a single bracket.
+         *
+         * @see #beginAdminSession()
+         */
         public void sendAdminCommand(String command, Object... args) {
             if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+                command = MessageTemplate.format(command, args);
+            }
+            if (isRedundant(loginName, command)) {
+                return;
+            }
+            beginAdminSession();
+            Session session = sessions.get();
+            boolean wasSendingAdminCommand = session.sendingAdminCommand;
+            try {
+                enterAdminMode();
+                session.sendingAdminCommand = true;
+                sendCommand(command);
+            } finally {
+                session.sendingAdminCommand = wasSendingAdminCommand;
+                endAdminSession();
             }
-            sendQuietly("admin {0}", adminPass);
-            sendCommand(command);
-            sendQuietly("admin");
         }
 
         /**
-         * Sends a command to the server, and echo it as a qtell to all managers.
+         * Starts an admin session. Until the matching {@link #endAdminSession()}, admin commands share one "admin" on/off bracket
+         * instead of each toggling admin mode on and off again. Sessions may be nested; admin mode is turned off when the outermost
+         * session ends.
+         *
+         * The bot opens a session around each manager command and each incoming datagram, so consecutive admin commands issued by a
+         * single handler are coalesced. Any other command, such as a tell, turns admin mode off first, so it's never sent with admin
+         * privileges nor held back until the handler ends.
+         */
+        public void beginAdminSession() {
+            sessions.get().adminSessionDepth++;
+        }
+
+        /**
+         * Ends an admin session started by {@link #beginAdminSession()}. If this closes the outermost session and admin mode was
+         * turned on, it's now turned off.
+         */
+        public void endAdminSession() {
+            Session session = sessions.get();
+            if (session.adminSessionDepth <= 0) {
+                throw new IllegalStateException("No admin session is in progress.");
+            }
+            if (session.adminSessionDepth == 1) {
+                flushSpoofs();
+            }
+            session.adminSessionDepth--;
+            if (session.adminSessionDepth == 0) {
+                leaveAdminMode();
+            }
+        }
+
+        /**
+         * Turns on admin mode, if it isn't on already. Admin mode stays on until the current admin session ends, or until a command
+         * without admin privileges is sent.
+         */
+        public void enterAdminMode() {
+            Session session = sessions.get();
+            if (session.adminSessionDepth <= 0) {
+                throw new IllegalStateException("Admin mode may only be entered within an admin session.");
+            }
+            if (session.adminUnit == null) {
+                session.adminUnit = new ArrayList<String>();
+                session.adminUnitPriority = session.priority;
+                session.adminUnit.add("admin " + adminPass);
+            }
+        }
+
+        /**
+         * Turns off admin mode, if it's on, and hands the admin bracket to the server. The next admin command in the session will turn
+         * admin mode on again. Long-running jobs use this to break up their work, so more urgent commands may be sent in between.
+         */
+        public void leaveAdminMode() {
+            flushSpoofs();
+            Session session = sessions.get();
+            if (session.adminUnit != null) {
+                session.adminUnit.add("admin");
+                List<String> unit = session.adminUnit;
+                session.adminUnit = null;
+                send(session.adminUnitPriority, unit);
+            }
+        }
+
+        /**
+         * Returns the outbound lane used for commands sent by the current handler.
+         */
+        public Priority getPriority() {
+            return sessions.get().priority;
+        }
+
+        /**
+         * Sets the outbound lane used for commands sent by the current handler, and returns the previous setting. Callers should restore
+         * the previous setting when done.
+         */
+        public Priority setPriority(Priority priority) {
+            Session session = sessions.get();
+            Priority old = session.priority;
+            session.priority = priority;
+            return old;
+        }
+
+        /**
+         * Returns when the datagram being handled by the current thread was received, per {@link System#nanoTime()}, or
+         * {@link OutboundQueue#NO_DATAGRAM} if none is.
+         */
+        public long getReceived() {
+            return sessions.get().received;
+        }
+
+        /**
+         * Sets when the datagram being handled by the current thread was received, and returns the previous setting. Callers should
+         * restore the previous setting when done.
+         */
+        public long setReceived(long received) {
+            Session session = sessions.get();
+            long old = session.received;
+            session.received = received;
+            return old;
+        }
+
+        /**
+         * Sends a command to the server, and records it in the command monitor for managers who wish to watch.
          */
         public void sendCommand(String command, Object... args) {
             if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+                command = MessageTemplate.format(command, args);
             }
-            qtellProgrammers(" -  {0}", command);
+            commandMonitor.record(command);
             sendQuietly(command);
         }
 
         /**
-         * Sends a command to the server. The command is not echoed as a qtell to managers.
+         * Sends a command to the server. The command is not echoed as a qtell to managers. Commands which merely repeat a setting recently
+         * sent to the server are skipped. Unless it's sent by {@link #sendAdminCommand(String, Object...)}, the command closes the admin
+         * bracket, if one is open, and is sent after it.
          */
-        public abstract void sendQuietly(String command, Object... args);
+        public void sendQuietly(String command, Object... args) {
+            if (args.length > 0) {
+                command = MessageTemplate.format(command, args);
+            }
+            if (isRedundant(loginName, command)) {
+                return;
+            }
+            remember(loginName, command);
+            flushSpoofs();
+            Session session = sessions.get();
+            if (!session.sendingAdminCommand) {
+                leaveAdminMode();
+            }
+            if (session.adminUnit != null) {
+                session.adminUnit.add(command);
+                session.adminUnitPriority = session.adminUnitPriority.highest(session.priority);
+            } else {
+                send(session.priority, Collections.singletonList(command));
+            }
+        }
+
+        /**
+         * Sends a unit of commands to the server. The commands must arrive together and in order.
+         */
+        protected abstract void send(Priority priority, List<String> unit);
+
+        /**
+         * Lists the event in the server's events list, replacing whatever is in its slot.
+         */
+        public void publishEvent(QEvent event) {
+            event.addEvent(this);
+        }
+
+        /**
+         * Returns true if the command would only repeat a setting the server already has, so it needn't be sent.
+         *
+         * @param handle
+         *            The user issuing the command: the spoofed player, or the bot itself.
+         * @see SettingCache
+         */
+        protected boolean isRedundant(String handle, String command) {
+            return false;
+        }
+
+        /**
+         * Notes any setting changed by a command about to be sent.
+         *
+         * @param handle
+         *            The user issuing the command: the spoofed player, or the bot itself.
+         */
+        protected void remember(String handle, String command) {
+        }
+
+        /**
+         * Forgets any setting noted for a command which was never sent, so it's sent again if repeated.
+         *
+         * @param handle
+         *            The user issuing the command: the spoofed player, or the bot itself.
+         */
+        protected void forget(String handle, String command) {
+        }
+
+        /**
+         * Forgets the settings noted for each command of a unit which was never sent, such as a bulk unit dropped because its lane was
+         * full. Spoofs, including packed ones, are forgotten for the spoofed player.
+         */
+        protected void forgetUnsent(List<String> unit) {
+            for (String command : unit) {
+                int space = command.indexOf(' ', "spoof ".length());
+                if (!command.startsWith("spoof ") || space < 0) {
+                    forget(loginName, command);
+                    continue;
+                }
+                String handle = command.substring("spoof ".length(), space);
+                String spoofed = command.substring(space + 1);
+                if (spoofed.startsWith(";")) {
+                    for (String packed : spoofed.substring(1).split("; ")) {
+                        forget(handle, packed);
+                    }
+                } else {
+                    forget(handle, spoofed);
+                }
+            }
+        }
+
+        /**
+         * Sends an announcement at the lower of announcement priority and the current handler's priority.
+         */
+        private void sendAnnouncement(String command, Object... args) {
+            Priority old = setPriority(getPriority().lowest(Priority.ANNOUNCEMENT));
+            try {
+                sendQuietly(command, args);
+            } finally {
+                setPriority(old);
+            }
+        }
         
         public void sshout(String msg, Object... args) {
             if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
+                msg = MessageTemplate.format(msg, args);
+            }
+            Priority old = setPriority(getPriority().lowest(Priority.ANNOUNCEMENT));
+            try {
+                sendCommand("sshout {0}", msg);
+            } finally {
+                setPriority(old);
             }
-            sendCommand("sshout {0}", msg);
         }
 
         public void spoof(String handle, String command, Object... args) {
             if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+                command = MessageTemplate.format(command, args);
             }
-            sendAdminCommand("spoof {0} {1}", handle, command);
+            sendSpoof(handle, command);
         }
 
         public void spoof(User user, String command, Object... args) {
             if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+                command = MessageTemplate.format(command, args);
             }
-            sendAdminCommand("spoof {0} {1}", user, command);
+            sendSpoof(user.getHandle(), command);
         }
 
         public void spoof(Role role, String command, Object... args) {
             if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+                command = MessageTemplate.format(command, args);
             }
             Set<User> users = userService.findUsersInRole(role);
             for (User user : users) {
-                sendAdminCommand("spoof {0} {1}", user, command);
+                sendSpoof(user.getHandle(), command);
+            }
+        }
+
+        /**
+         * Spoofs a command as the given user. Within an admin session, consecutive spoofs of the same user are packed into a single
+         * compound command, such as <tt>spoof Shirov-NYC ;set kib 0; set busy 2</tt>, up to the server's line-length limit. The packed
+         * command is sent as soon as anything else is sent, or when the session ends.
+         */
+        private void sendSpoof(String handle, String command) {
+            if (isRedundant(handle, command)) {
+                return;
+            }
+            remember(handle, command);
+            Session session = sessions.get();
+            boolean packable = (session.adminSessionDepth > 0) && (command.indexOf(';') < 0);
+            if (!packable) {
+                flushSpoofs();
+                sendAdminCommand("spoof {0} {1}", handle, command);
+                return;
+            }
+            if (session.spoofHandle != null) {
+                int packedLength = "spoof ".length() + session.spoofHandle.length() + " ;".length() + session.spoofCommands.length()
+                        + "; ".length() + command.length();
+                if (!session.spoofHandle.equalsIgnoreCase(handle) || packedLength > MAX_COMMAND_LENGTH) {
+                    flushSpoofs();
+                }
+            }
+            if (session.spoofHandle == null) {
+                session.spoofHandle = handle;
+            } else {
+                session.spoofCommands.append("; ");
+            }
+            session.spoofCommands.append(command);
+            session.spoofCount++;
+        }
+
+        /**
+         * Sends the spoofs waiting to be packed, if any.
+         */
+        private void flushSpoofs() {
+            Session session = sessions.get();
+            if (session.spoofHandle == null) {
+                return;
+            }
+            String handle = session.spoofHandle;
+            String commands = session.spoofCommands.toString();
+            boolean compound = (session.spoofCount > 1);
+            session.spoofHandle = null;
+            session.spoofCommands.setLength(0);
+            session.spoofCount = 0;
+            if (compound) {
+                sendAdminCommand("spoof {0} ;{1}", handle, commands);
+            } else {
+                sendAdminCommand("spoof {0} {1}", handle, commands);
             }
         }
 
@@ -1726,20 +3017,14 @@ public class USCLBot {
          * Sends a personal tell to the user.
          */
         public void tell(String handle, String msg, Object... args) {
-            if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
-            }
-            sendQuietly("tell {0} {1}", handle, msg);
+            sendQuietly(compose("tell", handle, msg, args).toString());
         }
 
         /**
          * Sends a personal tell to the user.
          */
         public void tell(User user, String msg, Object... args) {
-            if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
-            }
-            sendQuietly("tell {0} {1}", user, msg);
+            sendQuietly(compose("tell", user, msg, args).toString());
         }
 
         /**
@@ -1749,10 +3034,7 @@ public class USCLBot {
          * tells from others.
          */
         public void atell(String handle, String msg, Object... args) {
-            if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
-            }
-            sendAdminCommand("atell {0} {1}", handle, msg);
+            sendAdminCommand(compose("atell", handle, msg, args).toString());
         }
 
         /**
@@ -1762,20 +3044,29 @@ public class USCLBot {
          * tells from others.
          */
         public void atell(User user, String msg, Object... args) {
+            sendAdminCommand(compose("atell", user, msg, args).toString());
+        }
+
+        /**
+         * Renders "command target message" in a single pass, rather than formatting the message and then formatting it again into the
+         * command. As elsewhere in Commands, the message is only treated as a pattern if there are arguments.
+         */
+        private StringBuilder compose(String command, Object target, String msg, Object[] args) {
+            StringBuilder buf = new StringBuilder(command.length() + msg.length() + 32);
+            buf.append(command).append(' ').append(target).append(' ');
             if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
+                MessageTemplate.compile(msg).renderTo(buf, args);
+            } else {
+                buf.append(msg);
             }
-            sendAdminCommand("atell {0} {1}", user, msg);
+            return buf;
         }
 
         /**
          * Sends a tell to the channel.
          */
         public void tell(int channel, String msg, Object... args) {
-            if (args.length > 0) {
-                msg = MessageFormat.format(msg, args);
-            }
-            sendQuietly("tell {0} {1}", channel, msg);
+            sendAnnouncement(compose("tell", channel, msg, args).toString());
         }
 
     }
@@ -1783,13 +3074,38 @@ public class USCLBot {
     /** Used to send commands to the chess server. Such as qtell, tell, reserve-game, etc. */
     public class LiveCommands extends Commands {
         /**
-         * Sends a command to the server. The command is not echoed as a qtell to managers.
+         * Queues the commands in the outbound queue, which releases them to the server as the rate limit allows. Commands sent while
+         * handling a datagram carry the time it was received, so the outbound queue can record the datagram's latency once they're
+         * written. If the unit is dropped, the settings noted for it are forgotten, so repeating the command sends it again.
          */
-        public void sendQuietly(String command, Object... args) {
-            if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+        @Override
+        protected void send(Priority priority, List<String> unit) {
+            if (!outbound.submit(priority, unit, getReceived())) {
+                forgetUnsent(unit);
             }
-            conn.sendCommand(command, true, false, null);
+        }
+
+        /**
+         * Hands the event to the publisher, which sends it once the debounce period ends, and only if it changed.
+         */
+        @Override
+        public void publishEvent(QEvent event) {
+            eventPublisher.publish(event);
+        }
+
+        @Override
+        protected boolean isRedundant(String handle, String command) {
+            return settingCache.isRedundant(handle, command);
+        }
+
+        @Override
+        protected void remember(String handle, String command) {
+            settingCache.record(handle, command);
+        }
+
+        @Override
+        protected void forget(String handle, String command) {
+            settingCache.forget(handle, command);
         }
     }
     
@@ -1807,14 +3123,15 @@ public class USCLBot {
         }
         
         /**
-         * Sends a command to the server. The command is not echoed as a qtell to managers.
+         * Echoes the commands to the handle as qtells.
          */
         @Override
-        public void sendQuietly(String command, Object... args) {
-            if (args.length > 0) {
-                command = MessageFormat.format(command, args);
+        protected void send(Priority priority, List<String> unit) {
+            List<String> echo = new ArrayList<String>(unit.size());
+            for (String command : unit) {
+                echo.add(prefix + command);
             }
-            conn.sendCommand(prefix + command, true, false, null);
+            outbound.submit(priority, echo);
         }
 
         /**
@@ -1829,108 +3146,177 @@ public class USCLBot {
         public void sendAdminCommand(String command, Object... args) {
             sendQuietly(command, args);
         }
+
+        /**
+         * Commands are only echoed, so there's no need to turn on admin mode.
+         */
+        @Override
+        public void enterAdminMode() {
+        }
+
+        @Override
+        public void leaveAdminMode() {
+        }
         
     }
 
+    /**
+     * Returns the key which decides the stripe that handles a datagram. Datagrams about a game are keyed by the game number. Those about a
+     * player are keyed by the board of his scheduled game, so they're handled in order with the game's own datagrams, or by his handle if
+     * he has no game. Tells aren't keyed, since they're run exclusively.
+     */
+    private Object stripeKey(Datagram datagram) {
+        switch (datagram.getId()) {
+            case Datagram.DG_NOTIFY_ARRIVED:
+            case Datagram.DG_NOTIFY_LEFT:
+            case Datagram.DG_NOTIFY_STATE: {
+                String handle = datagram.getString(0);
+                Player player = tournamentService.findPlayer(handle);
+                Game game = tournamentService.findPlayerGame(player);
+                if (game != null) {
+                    return game.boardNumber;
+                }
+                return handle.toLowerCase();
+            }
+            case Datagram.DG_STARTED_OBSERVING:
+            case Datagram.DG_MOVE_LIST:
+            case Datagram.DG_SEND_MOVES:
+            case Datagram.DG_TAKEBACK:
+            case Datagram.DG_BACKWARD:
+            case Datagram.DG_MY_GAME_RESULT:
+            case Datagram.DG_PLAYERS_IN_MY_GAME:
+            case Datagram.DG_GAME_MESSAGE:
+                return datagram.getInteger(0);
+            default:
+                return datagram.getId();
+        }
+    }
+
+    /**
+     * Returns the lane in which a datagram waits for its stripe. Tells, which carry manager commands, and results go first, then the changes
+     * to players and games, then the traffic only used for statistics.
+     */
+    private InboundPriority priorityOf(Datagram datagram) {
+        switch (datagram.getId()) {
+            case Datagram.DG_PERSONAL_TELL:
+            case Datagram.DG_MY_GAME_RESULT:
+                return InboundPriority.URGENT;
+            case Datagram.DG_NOTIFY_ARRIVED:
+            case Datagram.DG_NOTIFY_LEFT:
+            case Datagram.DG_NOTIFY_STATE:
+            case Datagram.DG_STARTED_OBSERVING:
+            case Datagram.DG_MOVE_LIST:
+            case Datagram.DG_SEND_MOVES:
+            case Datagram.DG_TAKEBACK:
+            case Datagram.DG_BACKWARD:
+                return InboundPriority.STATE;
+            default:
+                return InboundPriority.BULK;
+        }
+    }
+
+    /**
+     * Registers the handlers for the datagrams the bot needs from the server. The notify arrived/left datagrams are registered later, by
+     * {@link #onConnected()}, once the notify list has been reset.
+     */
+    private void registerDatagramHandlers() {
+        dispatcher.register(Datagram.DG_PERSONAL_TELL, "personalTell", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                String teller = datagram.getString(0);
+                String titles = datagram.getString(1);
+                String message = datagram.getString(2);
+                int tellType = datagram.getInteger(3);
+                if (tellType == ChessclubConstants.REGULAR_TELL) {
+                    processPersonalTell(teller, titles, message, tellType);
+                }
+            }
+        });
+        dispatcher.register(Datagram.DG_NOTIFY_STATE, "notifyState", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                String player = datagram.getString(0);
+                String stateCode = datagram.getString(1);
+                PlayerState status = PlayerState.forCode(stateCode);
+                int game = datagram.getInteger(2);
+                processPlayerStateChange(player, status, game);
+            }
+        });
+        dispatcher.register(Datagram.DG_MY_GAME_RESULT, "myGameResult", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                processMyGameResult(new MyGameResult(datagram));
+            }
+        });
+        dispatcher.register(Datagram.DG_STARTED_OBSERVING, "startedObserving", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                processStartedObserving(new StartedObserving(datagram));
+            }
+        });
+        /* Moves are sent in Smith notation only, so each move in DG_MOVE_LIST and DG_SEND_MOVES is a single field such as "e2e4". */
+        dispatcher.request(Datagram.DG_MOVE_SMITH);
+        dispatcher.register(Datagram.DG_MOVE_LIST, "moveList", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                int gameNumber = datagram.getInteger(0);
+                String initialPosition = datagram.getString(1);
+                String[] smithMoves = new String[datagram.getFieldCount() - 2];
+                for (int i = 0; i < smithMoves.length; i++) {
+                    smithMoves[i] = datagram.getString(i + 2);
+                }
+                processMoveList(gameNumber, initialPosition, smithMoves);
+            }
+        });
+        dispatcher.register(Datagram.DG_SEND_MOVES, "sendMoves", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                int gameNumber = datagram.getInteger(0);
+                String smithMove = datagram.getString(1);
+                processSendMoves(gameNumber, smithMove);
+            }
+        });
+        DatagramHandler takeBack = new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                int gameNumber = datagram.getInteger(0);
+                int halfMoves = datagram.getInteger(1);
+                processTakeBack(gameNumber, halfMoves);
+            }
+        };
+        dispatcher.register(Datagram.DG_TAKEBACK, "takeBack", takeBack);
+        dispatcher.register(Datagram.DG_BACKWARD, "backward", takeBack);
+        dispatcher.register(Datagram.DG_PLAYERS_IN_MY_GAME, "playersInMyGame", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                int gameNumber = datagram.getInteger(0);
+                String playerHandle = datagram.getString(1);
+                String statusSymbol = datagram.getString(2);
+                boolean seesKibitz = datagram.getBoolean(3);
+                PlayerState status = PlayerState.forCode(statusSymbol);
+                processPlayersInMyGame(gameNumber, playerHandle, status, seesKibitz);
+            }
+        });
+    }
+
     /** The underlying connection to the chess server. This uses the Jin connection libraries. */
-    private class Connection extends free.chessclub.ChessclubConnection implements DatagramListener {
+    private class Connection extends free.chessclub.ChessclubConnection implements OutboundQueue.Sink {
 
         public Connection(String hostname, int port, String username, String password) {
             super(username, password, ECHO_STREAM);
         }
 
         @Override
-        public void datagramReceived(DatagramEvent evt) {
-            Datagram datagram = evt.getDatagram();
-            int code = datagram.getId();
-            switch (code) {
-                case Datagram.DG_NOTIFY_ARRIVED: {
-                    String player = datagram.getString(0);
-                    processPlayerArrived(player);
-                    break;
-                }
-                case Datagram.DG_NOTIFY_LEFT: {
-                    String player = datagram.getString(0);
-                    processPlayerDeparted(player);
-                    break;
-                }
-                case Datagram.DG_NOTIFY_STATE: {
-                    String player = datagram.getString(0);
-                    String stateCode = datagram.getString(1);
-                    PlayerState status = PlayerState.forCode(stateCode);
-                    int game = datagram.getInteger(2);
-                    processPlayerStateChange(player, status, game);
-                    break;
-                }
-                case Datagram.DG_PERSONAL_TELL: {
-                    String teller = datagram.getString(0);
-                    String titles = datagram.getString(1);
-                    String message = datagram.getString(2);
-                    int tellType = datagram.getInteger(3);
-                    if (tellType == ChessclubConstants.REGULAR_TELL) {
-                        processPersonalTell(teller, titles, message, tellType);
-                    }
-                    break;
-                }
-                case Datagram.DG_MY_NOTIFY_LIST: {
-                    break;
-                }
-                case Datagram.DG_MY_GAME_RESULT: {
-                    int gameNumber = datagram.getInteger(0);
-                    boolean becomesExamined = datagram.getBoolean(1);
-                    String gameResultCode = datagram.getString(2);
-                    String scoreString = datagram.getString(3);
-                    String descriptionString = datagram.getString(4);
-                    processMyGameResult(gameNumber, becomesExamined, gameResultCode, scoreString, descriptionString);
-                    break;
-                }
-                case Datagram.DG_STARTED_OBSERVING: {
-                    int gameNumber = datagram.getInteger(0);
-                    String whiteName = datagram.getString(1);
-                    String blackName = datagram.getString(2);
-                    int wildNumber = datagram.getInteger(3);
-                    String ratingCategoryString = datagram.getString(4);
-                    boolean isRated = datagram.getBoolean(5);
-                    int whiteInitial = datagram.getInteger(6);
-                    int whiteIncrement = datagram.getInteger(7);
-                    int blackInitial = datagram.getInteger(8);
-                    int blackIncrement = datagram.getInteger(9);
-                    boolean isPlayedGame = datagram.getBoolean(10);
-                    String exString = datagram.getString(11);
-                    int whiteRating = datagram.getInteger(12);
-                    int blackRating = datagram.getInteger(13);
-                    long gameID = datagram.getLong(14);
-                    String whiteTitles = datagram.getString(15);
-                    String blackTitles = datagram.getString(16);
-                    boolean isIrregularLegality = datagram.getBoolean(17);
-                    boolean isIrregularSemantics = datagram.getBoolean(18);
-                    boolean usesPlunkers = datagram.getBoolean(19);
-                    String fancyTimeControls = datagram.getString(20);
-                    processStartedObserving(gameNumber, whiteName, blackName, wildNumber, ratingCategoryString, isRated, whiteInitial, whiteIncrement,
-                            blackInitial, blackIncrement, isPlayedGame, exString, whiteRating, blackRating, gameID, whiteTitles, blackTitles,
-                            isIrregularLegality, isIrregularSemantics, usesPlunkers, fancyTimeControls);
-                    break;
-                }
-                case Datagram.DG_MOVE_LIST: {
-                    int gameNumber = datagram.getInteger(0);
-                    String initialPosition = datagram.getString(1);
-                    int numHalfMoves = datagram.getFieldCount() - 2;
-                    processMoveList(gameNumber, initialPosition, numHalfMoves);
-                    break;
-                }
-                case Datagram.DG_SEND_MOVES: {
-                    break;
-                }
-                case Datagram.DG_PLAYERS_IN_MY_GAME: {
-                    int gameNumber = datagram.getInteger(0);
-                    String playerHandle = datagram.getString(1);
-                    String statusSymbol = datagram.getString(2);
-                    boolean seesKibitz = datagram.getBoolean(3);
-                    PlayerState status = PlayerState.forCode(statusSymbol);
-                    processPlayersInMyGame(gameNumber, playerHandle, status, seesKibitz);
-                    break;
-                }
-            }
+        public void write(String command) {
+            sendCommand(command, true, false, null);
         }
 
         @Override
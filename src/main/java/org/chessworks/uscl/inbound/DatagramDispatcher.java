@@ -0,0 +1,179 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import free.chessclub.ChessclubConnection;
+import free.chessclub.level2.Datagram;
+import free.chessclub.level2.DatagramEvent;
+import free.chessclub.level2.DatagramListener;
+
+/**
+ * Routes datagrams received from the server to the handlers registered for them.
+ *
+ * Handlers are kept in an array indexed by datagram id, so dispatching a datagram is a single array lookup, with no switch statement and no
+ * allocation. Modules register handlers for just the datagrams they need; the dispatcher asks the server for a datagram the first time a
+ * handler is registered for it. Each handler's invocation count and running time are recorded, for troubleshooting.
+ *
+ * Registration may happen on any thread. Datagrams may be dispatched on several threads at once, such as by a {@link StripedExecutor}.
+ *
+ * @author Doug Bateman
+ */
+public class DatagramDispatcher implements DatagramListener {
+
+    /** A registered handler and its statistics. */
+    public static final class Registration {
+        private final int datagramId;
+        private final String name;
+        private final DatagramHandler handler;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Registration(int datagramId, String name, DatagramHandler handler) {
+            this.datagramId = datagramId;
+            this.name = name;
+            this.handler = handler;
+        }
+
+        public int getDatagramId() {
+            return datagramId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Returns the number of datagrams handled. */
+        public long getCount() {
+            return count.get();
+        }
+
+        /** Returns the total time spent handling datagrams, in nanoseconds. */
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /** Returns the longest time spent handling one datagram, in nanoseconds. */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    private static final Registration[] NONE = new Registration[0];
+
+    private final ChessclubConnection conn;
+
+    /** The handlers for each datagram id. Replaced, never modified, when a handler is registered. */
+    private volatile Registration[][] handlers = new Registration[0][];
+
+    /**
+     * @param conn
+     *            The connection the datagrams arrive from, or null if they are replayed offline.
+     */
+    public DatagramDispatcher(ChessclubConnection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Registers a handler for a datagram. Several handlers may be registered for the same datagram. They're called in the order they were
+     * registered.
+     *
+     * @param datagramId
+     *            The datagram id, such as {@link Datagram#DG_PERSONAL_TELL}.
+     * @param name
+     *            A short name for the handler, used when reporting its statistics.
+     */
+    public void register(int datagramId, String name, DatagramHandler handler) {
+        boolean first;
+        synchronized (this) {
+            Registration[][] table = handlers;
+            if (datagramId >= table.length) {
+                Registration[][] larger = new Registration[datagramId + 1][];
+                System.arraycopy(table, 0, larger, 0, table.length);
+                table = larger;
+            }
+            Registration[] old = (table[datagramId] == null) ? NONE : table[datagramId];
+            Registration[] updated = new Registration[old.length + 1];
+            System.arraycopy(old, 0, updated, 0, old.length);
+            updated[old.length] = new Registration(datagramId, name, handler);
+            first = (old.length == 0);
+            if (table == handlers) {
+                table = table.clone();
+            }
+            table[datagramId] = updated;
+            handlers = table;
+        }
+        if (first && conn != null) {
+            conn.addDatagramListener(this, datagramId);
+        }
+    }
+
+    /**
+     * Asks the server to turn on a datagram without registering a handler for it. This is used for datagrams which only change the format of
+     * other datagrams, such as {@link Datagram#DG_MOVE_SMITH}.
+     */
+    public void request(int datagramId) {
+        if (conn != null) {
+            conn.addDatagramListener(this, datagramId);
+        }
+    }
+
+    /** Returns the registered handlers and their statistics, ordered by datagram id. */
+    public List<Registration> getRegistrations() {
+        Registration[][] table = handlers;
+        List<Registration> result = new ArrayList<Registration>();
+        for (Registration[] registrations : table) {
+            if (registrations != null) {
+                for (Registration r : registrations) {
+                    result.add(r);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void datagramReceived(DatagramEvent evt) {
+        receive(evt.getDatagram());
+    }
+
+    /**
+     * Called for each datagram received, whether from the server or from a {@link DatagramReplayer}. By default, dispatches it immediately.
+     * Subclasses may override this to hand the datagram to another thread.
+     */
+    public void receive(Datagram datagram) {
+        dispatch(datagram);
+    }
+
+    /**
+     * Passes the datagram to each of its handlers, recording how long each takes. Subclasses may override this to wrap dispatching.
+     */
+    public void dispatch(Datagram datagram) {
+        int id = datagram.getId();
+        Registration[][] table = handlers;
+        if (id < 0 || id >= table.length) {
+            return;
+        }
+        Registration[] registrations = table[id];
+        if (registrations == null) {
+            return;
+        }
+        for (Registration r : registrations) {
+            long start = System.nanoTime();
+            try {
+                r.handler.handle(datagram);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                r.count.incrementAndGet();
+                r.totalNanos.addAndGet(elapsed);
+                long max = r.maxNanos.get();
+                while (elapsed > max && !r.maxNanos.compareAndSet(max, elapsed)) {
+                    max = r.maxNanos.get();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package org.chessworks.uscl.inbound;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Handles one kind of datagram received from the server. Handlers are registered with a {@link DatagramDispatcher}.
+ *
+ * @author Doug Bateman
+ */
+public interface DatagramHandler {
+
+    void handle(Datagram datagram);
+
+}
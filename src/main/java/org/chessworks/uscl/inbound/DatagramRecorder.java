@@ -0,0 +1,114 @@
+package org.chessworks.uscl.inbound;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Records the datagrams received from the server to a compact binary file, so a round can later be replayed offline by a
+ * {@link DatagramReplayer}.
+ *
+ * The file starts with a header: the magic number {@link #MAGIC}, followed by the time recording started, in milliseconds. Each datagram
+ * follows as a record, using variable-length integers:
+ * <ul>
+ * <li>the milliseconds since the previous record</li>
+ * <li>the datagram id plus one, or 0 for a {@link #markLoginComplete() login complete} marker</li>
+ * <li>the number of fields, followed by each field in modified UTF-8, as written by {@link DataOutputStream#writeUTF(String)}</li>
+ * </ul>
+ *
+ * @author Doug Bateman
+ */
+public class DatagramRecorder {
+
+    /** "UDG1": USCL datagrams, version 1. */
+    public static final int MAGIC = 0x55444731;
+
+    private final DataOutputStream out;
+
+    private long lastMillis;
+
+    private boolean closed = false;
+
+    /**
+     * Creates the file, replacing any existing file.
+     */
+    public DatagramRecorder(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        lastMillis = System.currentTimeMillis();
+        out.writeInt(MAGIC);
+        out.writeLong(lastMillis);
+    }
+
+    /** Records a datagram, as received now. */
+    public void record(Datagram datagram) throws IOException {
+        record(datagram, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a datagram, as received at the given time, in milliseconds. Times earlier than the previous record's are treated as equal to it.
+     */
+    public synchronized void record(Datagram datagram, long timeMillis) throws IOException {
+        if (closed) {
+            return;
+        }
+        writeHeader(datagram.getId() + 1, timeMillis);
+        int count = datagram.getFieldCount();
+        writeVarInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeUTF(datagram.getString(i));
+        }
+    }
+
+    /**
+     * Records that the burst of datagrams the server sends after login has ended, so a replay knows where normal operations begin.
+     */
+    public void markLoginComplete() throws IOException {
+        markLoginComplete(System.currentTimeMillis());
+    }
+
+    /**
+     * Records that the burst of datagrams the server sends after login ended at the given time, in milliseconds.
+     */
+    public synchronized void markLoginComplete(long timeMillis) throws IOException {
+        if (closed) {
+            return;
+        }
+        writeHeader(0, timeMillis);
+        writeVarInt(0);
+        out.flush();
+    }
+
+    /** Writes any buffered records to the file. */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /** Finishes the recording. Datagrams recorded later are ignored. */
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeHeader(int code, long timeMillis) throws IOException {
+        writeVarInt(Math.max(0, timeMillis - lastMillis));
+        lastMillis = Math.max(lastMillis, timeMillis);
+        writeVarInt(code);
+    }
+
+    private void writeVarInt(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+}
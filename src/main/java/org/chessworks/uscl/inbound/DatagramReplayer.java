@@ -0,0 +1,137 @@
+package org.chessworks.uscl.inbound;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Feeds datagrams recorded by a {@link DatagramRecorder} back through a {@link DatagramDispatcher}, as though they had just arrived from the
+ * server. Datagrams are replayed either at the pace they were recorded, or as fast as possible, to measure throughput.
+ *
+ * @author Doug Bateman
+ */
+public class DatagramReplayer {
+
+    private final File file;
+
+    private final boolean realTime;
+
+    private long replayed = 0;
+
+    private long elapsedNanos = 0;
+
+    /**
+     * @param file
+     *            The recording to replay.
+     * @param realTime
+     *            True to replay at the pace the datagrams were recorded. False to replay as fast as possible.
+     */
+    public DatagramReplayer(File file, boolean realTime) {
+        this.file = file;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Replays the recording, passing each datagram to the dispatcher's {@link DatagramDispatcher#receive(Datagram)} method on the calling
+     * thread.
+     *
+     * @param onLoginComplete
+     *            Run when the replay reaches the point where the server's login burst ended. May be null.
+     * @return the number of datagrams replayed.
+     */
+    public long replay(DatagramDispatcher dispatcher, Runnable onLoginComplete) throws IOException, InterruptedException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != DatagramRecorder.MAGIC) {
+                throw new IOException("Not a datagram recording: " + file);
+            }
+            in.readLong();
+            long start = System.nanoTime();
+            long due = start;
+            while (true) {
+                long delayMillis;
+                int code;
+                String[] fields;
+                try {
+                    delayMillis = readVarInt(in);
+                    code = (int) readVarInt(in);
+                    fields = new String[(int) readVarInt(in)];
+                    for (int i = 0; i < fields.length; i++) {
+                        fields[i] = in.readUTF();
+                    }
+                } catch (EOFException e) {
+                    /* The end of the recording, or a record cut short when the bot stopped. */
+                    break;
+                }
+                if (realTime) {
+                    due += delayMillis * 1000000L;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+                }
+                if (code == 0) {
+                    if (onLoginComplete != null) {
+                        onLoginComplete.run();
+                    }
+                    continue;
+                }
+                dispatcher.receive(toDatagram(code - 1, fields));
+                replayed++;
+            }
+            elapsedNanos = System.nanoTime() - start;
+            return replayed;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Returns the number of datagrams replayed. */
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /** Returns how long the replay took, in nanoseconds. */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Rebuilds a datagram from its fields, in the form the server sends it. Fields which are empty or contain spaces are enclosed in braces,
+     * or in control-Y braces if they contain braces themselves.
+     */
+    static Datagram toDatagram(int id, String[] fields) {
+        StringBuilder s = new StringBuilder();
+        s.append(id);
+        for (String field : fields) {
+            s.append(' ');
+            if (field.indexOf('{') >= 0 || field.indexOf('}') >= 0) {
+                s.append("\u0019{").append(field).append("\u0019}");
+            } else if (field.length() == 0 || field.indexOf(' ') >= 0) {
+                s.append('{').append(field).append('}');
+            } else {
+                s.append(field);
+            }
+        }
+        return Datagram.parseDatagram(s.toString());
+    }
+
+    private static long readVarInt(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.chessworks.uscl.inbound;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * A typed, read-only view of a datagram. Fields are decoded only when their accessor is called, so handlers pay only for the fields they
+ * read. Many datagrams carry far more fields than the bot uses.
+ *
+ * Views are cheap wrappers and hold no decoded state; a handler which needs a field more than once should keep it in a local variable.
+ *
+ * @author Doug Bateman
+ */
+public abstract class DatagramView {
+
+    protected final Datagram datagram;
+
+    protected DatagramView(Datagram datagram) {
+        this.datagram = datagram;
+    }
+
+    /** Returns the underlying datagram. */
+    public Datagram getDatagram() {
+        return datagram;
+    }
+
+    @Override
+    public String toString() {
+        return datagram.toString();
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.chessworks.uscl.inbound;
+
+/**
+ * The lanes of the {@link StripedExecutor}. On each stripe, datagrams in a higher priority lane are handled before those waiting in a lower
+ * priority lane, except that datagrams for the same game or player are always handled in the order they arrived.
+ *
+ * @author Doug Bateman
+ */
+public enum InboundPriority {
+
+    /** Personal tells, which carry manager commands, and game results. */
+    URGENT,
+
+    /** Players arriving, leaving and changing state, games starting, and moves. */
+    STATE,
+
+    /** Observers coming and going, game messages, and anything else only used for statistics. */
+    BULK;
+
+}
@@ -0,0 +1,102 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.concurrent.TimeUnit;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Tells when the burst of datagrams the server sends after login is over. The burst is over once the bot has sent all its queued commands,
+ * and neither a write nor a datagram belonging to the burst has happened for the idle gap. If that never happens, the burst is assumed to
+ * be over once the maximum wait has passed.
+ *
+ * Only the datagrams the server sends in reply to the bot's login commands count toward the burst: the notify list, the states of the
+ * players on it, and the games the bot begins observing. Moves, observers and tells keep arriving all through a round, so after a
+ * reconnect mid-round they'd never leave a gap.
+ *
+ * @author Doug Bateman
+ */
+public class LoginBurst {
+
+    /** The state of the burst. */
+    public enum State {
+        /** Datagrams or writes belonging to the burst are still going on. */
+        BUSY,
+        /** The burst is over, since the server and the bot have been quiet for the idle gap. */
+        QUIET,
+        /** The burst is assumed to be over, since the maximum wait has passed. */
+        EXPIRED
+    }
+
+    private final long started;
+
+    private final long idleGapNanos;
+
+    private final long maxWaitNanos;
+
+    /** When the last datagram belonging to the burst arrived, per {@link System#nanoTime()}. */
+    private volatile long lastDatagramNanos;
+
+    /**
+     * @param started
+     *            When the bot logged in, per {@link System#nanoTime()}.
+     * @param idleGapMillis
+     *            How long, in milliseconds, the server and the bot must be quiet before the burst is over.
+     * @param maxWaitMillis
+     *            The longest time, in milliseconds, to wait for the burst to end.
+     */
+    public LoginBurst(long started, long idleGapMillis, long maxWaitMillis) {
+        this.started = started;
+        this.idleGapNanos = TimeUnit.MILLISECONDS.toNanos(idleGapMillis);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.lastDatagramNanos = started;
+    }
+
+    /** Returns true if the datagram is one the server sends in reply to the bot's login commands. */
+    public static boolean isBurstDatagram(int datagramId) {
+        switch (datagramId) {
+            case Datagram.DG_MY_NOTIFY_LIST:
+            case Datagram.DG_NOTIFY_ARRIVED:
+            case Datagram.DG_NOTIFY_LEFT:
+            case Datagram.DG_NOTIFY_STATE:
+            case Datagram.DG_STARTED_OBSERVING:
+            case Datagram.DG_MOVE_LIST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Notes a datagram received from the server. Datagrams which aren't part of the burst are ignored. */
+    public void received(int datagramId, long nanos) {
+        if (isBurstDatagram(datagramId)) {
+            lastDatagramNanos = nanos;
+        }
+    }
+
+    /**
+     * Returns the state of the burst.
+     *
+     * @param now
+     *            The current time, per {@link System#nanoTime()}.
+     * @param lastWriteNanos
+     *            When the bot last wrote a command to the server.
+     * @param outboundIdle
+     *            True if no commands are waiting to be written.
+     */
+    public State check(long now, long lastWriteNanos, boolean outboundIdle) {
+        long lastActivity = Math.max(started, Math.max(lastDatagramNanos, lastWriteNanos));
+        if (outboundIdle && now - lastActivity >= idleGapNanos) {
+            return State.QUIET;
+        }
+        if (now - started >= maxWaitNanos) {
+            return State.EXPIRED;
+        }
+        return State.BUSY;
+    }
+
+    /** Returns how long, in milliseconds, the burst lasted until the given time. */
+    public long getElapsedMillis(long now) {
+        return TimeUnit.NANOSECONDS.toMillis(now - started);
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.chessworks.uscl.inbound;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * A view of the DG_MY_GAME_RESULT datagram, sent when a game the bot observes (or plays) ends or adjourns.
+ *
+ * @author Doug Bateman
+ */
+public class MyGameResult extends DatagramView {
+
+    public MyGameResult(Datagram datagram) {
+        super(datagram);
+    }
+
+    public int getGameNumber() {
+        return datagram.getInteger(0);
+    }
+
+    public boolean becomesExamined() {
+        return datagram.getBoolean(1);
+    }
+
+    public String getGameResultCode() {
+        return datagram.getString(2);
+    }
+
+    /** Returns the score, such as "1-0", "0-1", "1/2-1/2", "*" or "aborted". */
+    public String getScoreString() {
+        return datagram.getString(3);
+    }
+
+    /** Returns the description of how the game ended, such as "White resigns". */
+    public String getDescription() {
+        return datagram.getString(4);
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.chessworks.uscl.model.ObserverStats;
+
+import free.util.SafeRunnable;
+
+/**
+ * Gathers observers arriving and leaving each game, so they can be applied to the game as one batch rather than one datagram at a time.
+ * Popular boards see thousands of observers come and go, and handling each separately would queue them ahead of the moves, tells and
+ * results of every other board sharing the stripe.
+ *
+ * Each batch is handed to the game's stripe of a {@link StripedExecutor}, in the bulk lane, so it is applied in order with the game's other
+ * datagrams. The bot {@link #flushAll() flushes} every game periodically, and {@link #flush(int) flushes} a game before any datagram which
+ * depends on its observers, such as its result. No more than <tt>capacity</tt> changes are held at once. Past that, the game with the most
+ * changes is flushed immediately, so a surge of observers costs more batches, but never unbounded memory.
+ *
+ * @author Doug Bateman
+ */
+public class ObserverCoalescer {
+
+    /** Applies a batch to a game. Runs on the game's stripe. */
+    public interface Target {
+        void apply(int gameNumber, ObserverStats.Batch batch);
+    }
+
+    private final StripedExecutor stripes;
+
+    private final Target target;
+
+    private final int capacity;
+
+    /** The changes waiting for each game, by game number. */
+    private final Map<Integer, ObserverStats.Batch> pending = new HashMap<Integer, ObserverStats.Batch>();
+
+    /** The number of changes waiting, in all games. */
+    private int pendingCount = 0;
+
+    private long coalesced = 0;
+
+    private long batches = 0;
+
+    /**
+     * @param stripes
+     *            Runs the batches, on the stripe keyed by the game number.
+     * @param target
+     *            Applies each batch to its game.
+     * @param capacity
+     *            The most changes held at once.
+     */
+    public ObserverCoalescer(StripedExecutor stripes, Target target, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        this.stripes = stripes;
+        this.target = target;
+        this.capacity = capacity;
+    }
+
+    /** Adds an observer arriving at, or leaving, a game. */
+    public synchronized void add(int gameNumber, String handle, boolean arriving) {
+        Integer key = gameNumber;
+        ObserverStats.Batch batch = pending.get(key);
+        if (batch == null) {
+            batch = new ObserverStats.Batch();
+            pending.put(key, batch);
+        }
+        batch.add(handle, arriving, System.nanoTime());
+        pendingCount++;
+        coalesced++;
+        if (pendingCount >= capacity) {
+            flushLargest();
+        }
+    }
+
+    /** Sends the changes waiting for a game to its stripe, ahead of any datagrams for the game submitted after this call. */
+    public synchronized void flush(int gameNumber) {
+        ObserverStats.Batch batch = pending.remove(gameNumber);
+        if (batch != null) {
+            submit(gameNumber, batch);
+        }
+    }
+
+    /** Sends the changes waiting for every game to their stripes. */
+    public synchronized void flushAll() {
+        for (Map.Entry<Integer, ObserverStats.Batch> e : pending.entrySet()) {
+            submit(e.getKey(), e.getValue());
+        }
+        pending.clear();
+    }
+
+    /** Returns the number of changes waiting, in all games. */
+    public synchronized int getPending() {
+        return pendingCount;
+    }
+
+    /** Returns the number of changes added since the coalescer was created. */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /** Returns the number of batches sent since the coalescer was created. */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    private void flushLargest() {
+        Integer largest = null;
+        int largestSize = 0;
+        for (Map.Entry<Integer, ObserverStats.Batch> e : pending.entrySet()) {
+            int size = e.getValue().size();
+            if (size > largestSize) {
+                largest = e.getKey();
+                largestSize = size;
+            }
+        }
+        if (largest != null) {
+            flush(largest);
+        }
+    }
+
+    /* Submitted while holding the lock, so a batch can't be overtaken by a datagram submitted after a flush. */
+    private void submit(final int gameNumber, final ObserverStats.Batch batch) {
+        pendingCount -= batch.size();
+        batches++;
+        Runnable task = new SafeRunnable() {
+
+            @Override
+            public void safeRun() {
+                target.apply(gameNumber, batch);
+            }
+        };
+        stripes.execute(gameNumber, InboundPriority.BULK, task);
+    }
+
+}
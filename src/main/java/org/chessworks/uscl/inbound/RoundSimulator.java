@@ -0,0 +1,195 @@
+package org.chessworks.uscl.inbound;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.chessworks.uscl.model.Player;
+import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.services.InvalidPlayerException;
+import org.chessworks.uscl.services.InvalidTeamException;
+import org.chessworks.uscl.services.TournamentService;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Simulates a round of the league, for load testing the bot without the server. The simulator schedules a synthetic round of any size, then
+ * writes the datagrams the server would send the bot while the round is played: players arriving, games starting, observers coming and
+ * going, moves, and results. The recording is then replayed through the bot by a {@link DatagramReplayer}.
+ *
+ * Matches are played on four boards, between synthetic teams with codes such as "SAB". Board numbers double as the server's game numbers.
+ *
+ * @author Doug Bateman
+ */
+public class RoundSimulator {
+
+    /** The number of boards in each match. */
+    private static final int BOARDS_PER_MATCH = 4;
+
+    /** Knight shuffles, in Smith notation, so every simulated move is legal. */
+    private static final String[] WHITE_MOVES = { "g1f3", "f3g1" };
+    private static final String[] BLACK_MOVES = { "g8f6", "f6g8" };
+
+    /** A datagram and the simulated time it arrives. */
+    private static final class Event {
+        final long time;
+        final long sequence;
+        final String datagram;
+
+        Event(long time, long sequence, String datagram) {
+            this.time = time;
+            this.sequence = sequence;
+            this.datagram = datagram;
+        }
+    }
+
+    private final int boards;
+    private final int observersPerBoard;
+    private final int movesPerGame;
+    private final long moveMillis;
+    private final Random random;
+
+    private final List<Event> events = new ArrayList<Event>();
+
+    /**
+     * @param boards
+     *            The number of boards played in the round.
+     * @param observersPerBoard
+     *            The number of observers who watch each board, arriving and leaving at random times.
+     * @param movesPerGame
+     *            The number of half-moves played in each game.
+     * @param moveMillis
+     *            The average time, in milliseconds, between moves on a board.
+     * @param seed
+     *            Seeds the random timings, so a round can be simulated again exactly.
+     */
+    public RoundSimulator(int boards, int observersPerBoard, int movesPerGame, long moveMillis, long seed) {
+        if (boards < 1) {
+            throw new IllegalArgumentException("boards must be at least 1.");
+        }
+        this.boards = boards;
+        this.observersPerBoard = observersPerBoard;
+        this.movesPerGame = movesPerGame;
+        this.moveMillis = Math.max(1, moveMillis);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Creates the simulated teams and players and schedules their games, replacing any existing schedule.
+     */
+    public void schedule(TournamentService service) throws InvalidTeamException, InvalidPlayerException {
+        service.clearSchedule();
+        int matches = (boards + BOARDS_PER_MATCH - 1) / BOARDS_PER_MATCH;
+        for (int m = 0; m < matches; m++) {
+            Team home = service.findOrCreateTeam(teamCode(2 * m));
+            Team away = service.findOrCreateTeam(teamCode(2 * m + 1));
+            for (int b = 1; b <= BOARDS_PER_MATCH; b++) {
+                int board = m * BOARDS_PER_MATCH + b;
+                if (board > boards) {
+                    break;
+                }
+                Player white = findOrCreatePlayer(service, whiteHandle(board), home);
+                Player black = findOrCreatePlayer(service, blackHandle(board), away);
+                service.scheduleGame(board, board, white, black);
+            }
+        }
+    }
+
+    /**
+     * Writes the datagrams for the round to a recording, starting at the current time.
+     *
+     * @return the number of datagrams written.
+     */
+    public int write(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        events.clear();
+        for (int board = 1; board <= boards; board++) {
+            simulateBoard(board, start);
+        }
+        Collections.sort(events, new Comparator<Event>() {
+
+            @Override
+            public int compare(Event a, Event b) {
+                if (a.time != b.time) {
+                    return (a.time < b.time) ? -1 : 1;
+                }
+                return (a.sequence < b.sequence) ? -1 : (a.sequence == b.sequence) ? 0 : 1;
+            }
+        });
+        DatagramRecorder recorder = new DatagramRecorder(file);
+        try {
+            /* The login burst: every scheduled player is already online. */
+            for (int board = 1; board <= boards; board++) {
+                recorder.record(Datagram.parseDatagram(Datagram.DG_NOTIFY_ARRIVED + " " + whiteHandle(board)), start);
+                recorder.record(Datagram.parseDatagram(Datagram.DG_NOTIFY_ARRIVED + " " + blackHandle(board)), start);
+            }
+            recorder.markLoginComplete(start);
+            for (Event e : events) {
+                recorder.record(Datagram.parseDatagram(e.datagram), e.time);
+            }
+        } finally {
+            recorder.close();
+        }
+        int written = events.size() + 2 * boards;
+        events.clear();
+        return written;
+    }
+
+    private void simulateBoard(int board, long start) {
+        String white = whiteHandle(board);
+        String black = blackHandle(board);
+        /* Boards start within the first few seconds of the round. */
+        long t = start + 1 + random.nextInt(5000);
+        add(t, Datagram.DG_NOTIFY_STATE, white + " P " + board);
+        add(t, Datagram.DG_NOTIFY_STATE, black + " P " + board);
+        add(t + 1, Datagram.DG_STARTED_OBSERVING, board + " " + white + " " + black
+                + " 0 Standard 1 45 5 45 5 1 {} 2400 2400 " + (1000000L + board) + " {} {} 0 0 0 {}");
+        add(t + 1, Datagram.DG_MOVE_LIST, board + " *");
+        long end = t + 2;
+        for (int i = 0; i < movesPerGame; i++) {
+            end += 1 + random.nextInt((int) Math.min(Integer.MAX_VALUE, 2 * moveMillis));
+            String move = (i % 2 == 0) ? WHITE_MOVES[(i / 2) % 2] : BLACK_MOVES[(i / 2) % 2];
+            add(end, Datagram.DG_SEND_MOVES, board + " " + move);
+        }
+        long length = end - t;
+        for (int o = 0; o < observersPerBoard; o++) {
+            String observer = "Obs" + board + "x" + o;
+            long arrives = t + 2 + (long) (random.nextDouble() * length);
+            long leaves = arrives + (long) (random.nextDouble() * (end - arrives));
+            add(arrives, Datagram.DG_PLAYERS_IN_MY_GAME, board + " " + observer + " O 1");
+            add(leaves, Datagram.DG_PLAYERS_IN_MY_GAME, board + " " + observer + " X 0");
+        }
+        add(end + 1, Datagram.DG_MY_GAME_RESULT, board + " 0 Res 1-0 {Black resigns}");
+        add(end + 1, Datagram.DG_NOTIFY_STATE, white + " X 0");
+        add(end + 1, Datagram.DG_NOTIFY_STATE, black + " X 0");
+    }
+
+    private void add(long time, int datagramId, String fields) {
+        events.add(new Event(time, events.size(), datagramId + " " + fields));
+    }
+
+    private static Player findOrCreatePlayer(TournamentService service, String handle, Team team) throws InvalidPlayerException {
+        Player p = service.findPlayer(handle);
+        return (p != null) ? p : service.createPlayer(handle, team);
+    }
+
+    /** Returns a three letter team code for the team: "SAA", "SAB", etc. */
+    private static String teamCode(int team) {
+        return "S" + (char) ('A' + (team / 26) % 26) + (char) ('A' + team % 26);
+    }
+
+    private static String whiteHandle(int board) {
+        int match = (board - 1) / BOARDS_PER_MATCH;
+        return "Sim" + board + "w-" + teamCode(2 * match);
+    }
+
+    private static String blackHandle(int board) {
+        int match = (board - 1) / BOARDS_PER_MATCH;
+        return "Sim" + board + "b-" + teamCode(2 * match + 1);
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.chessworks.uscl.inbound;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * A view of the DG_STARTED_OBSERVING datagram, sent when the bot starts observing a game.
+ *
+ * @author Doug Bateman
+ */
+public class StartedObserving extends DatagramView {
+
+    public StartedObserving(Datagram datagram) {
+        super(datagram);
+    }
+
+    public int getGameNumber() {
+        return datagram.getInteger(0);
+    }
+
+    public String getWhiteName() {
+        return datagram.getString(1);
+    }
+
+    public String getBlackName() {
+        return datagram.getString(2);
+    }
+
+    public int getWildNumber() {
+        return datagram.getInteger(3);
+    }
+
+    public String getRatingCategory() {
+        return datagram.getString(4);
+    }
+
+    public boolean isRated() {
+        return datagram.getBoolean(5);
+    }
+
+    public int getWhiteInitial() {
+        return datagram.getInteger(6);
+    }
+
+    public int getWhiteIncrement() {
+        return datagram.getInteger(7);
+    }
+
+    public int getBlackInitial() {
+        return datagram.getInteger(8);
+    }
+
+    public int getBlackIncrement() {
+        return datagram.getInteger(9);
+    }
+
+    /** Returns true if this is a game being played, rather than examined. */
+    public boolean isPlayedGame() {
+        return datagram.getBoolean(10);
+    }
+
+    public String getExString() {
+        return datagram.getString(11);
+    }
+
+    public int getWhiteRating() {
+        return datagram.getInteger(12);
+    }
+
+    public int getBlackRating() {
+        return datagram.getInteger(13);
+    }
+
+    public long getGameID() {
+        return datagram.getLong(14);
+    }
+
+    public String getWhiteTitles() {
+        return datagram.getString(15);
+    }
+
+    public String getBlackTitles() {
+        return datagram.getString(16);
+    }
+
+    public boolean isIrregularLegality() {
+        return datagram.getBoolean(17);
+    }
+
+    public boolean isIrregularSemantics() {
+        return datagram.getBoolean(18);
+    }
+
+    public boolean usesPlunkers() {
+        return datagram.getBoolean(19);
+    }
+
+    public String getFancyTimeControls() {
+        return datagram.getString(20);
+    }
+
+}
@@ -0,0 +1,420 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a fixed set of worker threads, or stripes, chosen by key. Tasks with equal keys always run on the same stripe, one at a time
+ * and in the order submitted. Tasks with different keys may run in parallel.
+ *
+ * The bot keys datagrams by game (or by player, for players without a game), so the events of one game are handled in order while
+ * different boards are handled at the same time.
+ *
+ * Each task is submitted in an {@link InboundPriority} lane. When a stripe is choosing its next task, keys with urgent tasks waiting go
+ * before keys with only state changes waiting, which go before keys with only bulk tasks waiting. Keys in the same lane take turns, one task
+ * each. Since a key's tasks still run in order, an urgent task waits for the tasks submitted before it with the same key, but not for those
+ * of any other key. A manager's tell is therefore never stuck behind a crowd of observers on a busy board.
+ *
+ * A task which may touch any key, such as a manager's command, can be {@link #executeExclusive(InboundPriority, Runnable) run exclusively},
+ * holding every stripe while it runs.
+ *
+ * @author Doug Bateman
+ */
+public class StripedExecutor {
+
+    /** A task waiting on a stripe. */
+    private static final class Task {
+        final KeyQueue owner;
+        final Runnable runnable;
+        final InboundPriority priority;
+        final long queuedAt;
+        final Epoch epoch;
+
+        Task(KeyQueue owner, Runnable runnable, InboundPriority priority, long queuedAt, Epoch epoch) {
+            this.owner = owner;
+            this.runnable = runnable;
+            this.priority = priority;
+            this.queuedAt = queuedAt;
+            this.epoch = epoch;
+        }
+    }
+
+    /** The tasks waiting for one key, in the order submitted. */
+    private static final class KeyQueue {
+        final Object key;
+        final ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+        /** The number of waiting tasks in each lane. */
+        final int[] counts = new int[InboundPriority.values().length];
+        /** The lane the key is waiting in, or null while one of its tasks is running. */
+        InboundPriority readyIn;
+
+        KeyQueue(Object key) {
+            this.key = key;
+        }
+
+        /** Returns the highest lane of the tasks waiting. */
+        InboundPriority highest() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return InboundPriority.values()[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** The tasks submitted between two calls to {@link StripedExecutor#afterPending(Runnable)}. */
+    private static final class Epoch {
+        int unfinished;
+        Epoch next;
+        final List<Runnable> barriers = new ArrayList<Runnable>();
+    }
+
+    /** The statistics of one lane of one stripe. */
+    private static final class Lane {
+        int queued;
+        int maxQueued;
+        long started;
+        long totalWaitNanos;
+        long maxWaitNanos;
+    }
+
+    private final class Stripe implements Runnable {
+        final Map<Object, KeyQueue> keys = new HashMap<Object, KeyQueue>();
+        final ArrayDeque<KeyQueue>[] ready;
+        final Lane[] lanes;
+        Epoch oldest = new Epoch();
+        Epoch current = oldest;
+        int queued;
+        long completed;
+
+        @SuppressWarnings("unchecked")
+        Stripe() {
+            int n = InboundPriority.values().length;
+            ready = (ArrayDeque<KeyQueue>[]) new ArrayDeque<?>[n];
+            lanes = new Lane[n];
+            for (int i = 0; i < n; i++) {
+                ready[i] = new ArrayDeque<KeyQueue>();
+                lanes[i] = new Lane();
+            }
+        }
+
+        synchronized void submit(Object key, InboundPriority priority, Runnable runnable) {
+            if (shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down.");
+            }
+            KeyQueue kq = keys.get(key);
+            if (kq == null) {
+                kq = new KeyQueue(key);
+                keys.put(key, kq);
+                makeReady(kq, priority);
+            } else if (kq.readyIn != null && priority.compareTo(kq.readyIn) < 0) {
+                /* Promote the key, so the urgent task runs as soon as the tasks ahead of it with the same key. */
+                ready[kq.readyIn.ordinal()].remove(kq);
+                makeReady(kq, priority);
+            }
+            kq.tasks.add(new Task(kq, runnable, priority, System.nanoTime(), current));
+            kq.counts[priority.ordinal()]++;
+            current.unfinished++;
+            queued++;
+            Lane lane = lanes[priority.ordinal()];
+            lane.queued++;
+            lane.maxQueued = Math.max(lane.maxQueued, lane.queued);
+            notify();
+        }
+
+        private void makeReady(KeyQueue kq, InboundPriority priority) {
+            kq.readyIn = priority;
+            ready[priority.ordinal()].add(kq);
+        }
+
+        /** Returns the runnables to run once the tasks submitted so far have finished, or null if some are still waiting. */
+        synchronized List<Runnable> barrier(Runnable runnable) {
+            current.barriers.add(runnable);
+            Epoch next = new Epoch();
+            current.next = next;
+            current = next;
+            return releaseBarriers();
+        }
+
+        private List<Runnable> releaseBarriers() {
+            List<Runnable> released = null;
+            while (oldest != current && oldest.unfinished == 0) {
+                if (released == null) {
+                    released = new ArrayList<Runnable>();
+                }
+                released.addAll(oldest.barriers);
+                oldest = oldest.next;
+            }
+            return released;
+        }
+
+        /** Waits for the next task, or returns null once shut down with nothing left to do. */
+        private synchronized Task next() throws InterruptedException {
+            while (true) {
+                for (ArrayDeque<KeyQueue> lane : ready) {
+                    KeyQueue kq = lane.poll();
+                    if (kq != null) {
+                        kq.readyIn = null;
+                        Task task = kq.tasks.poll();
+                        kq.counts[task.priority.ordinal()]--;
+                        queued--;
+                        Lane stats = lanes[task.priority.ordinal()];
+                        long waited = System.nanoTime() - task.queuedAt;
+                        stats.queued--;
+                        stats.started++;
+                        stats.totalWaitNanos += waited;
+                        stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waited);
+                        return task;
+                    }
+                }
+                if (shutdown) {
+                    return null;
+                }
+                wait();
+            }
+        }
+
+        private synchronized List<Runnable> finished(Task task) {
+            completed++;
+            KeyQueue kq = task.owner;
+            InboundPriority highest = kq.highest();
+            if (highest == null) {
+                keys.remove(kq.key);
+            } else {
+                makeReady(kq, highest);
+            }
+            task.epoch.unfinished--;
+            return releaseBarriers();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Task task;
+                while ((task = next()) != null) {
+                    /* Even an Error mustn't end the thread, or leave the key claimed and its epoch unfinished. */
+                    try {
+                        task.runnable.run();
+                    } catch (Throwable e) {
+                        e.printStackTrace(System.err);
+                    } finally {
+                        runAll(finished(task));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param stripeCount
+     *            The number of worker threads.
+     * @param name
+     *            The name of the worker threads, which are numbered.
+     */
+    public StripedExecutor(int stripeCount, String name) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be at least 1.");
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+            Thread t = new Thread(stripes[i], name + " " + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** Returns the number of stripes. */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /** Returns the stripe on which tasks with the given key run. */
+    public int stripeOf(Object key) {
+        return (key.hashCode() & 0x7fffffff) % stripes.length;
+    }
+
+    /** Runs the task on the stripe for the key, in the {@link InboundPriority#STATE state} lane. */
+    public void execute(Object key, Runnable task) {
+        execute(key, InboundPriority.STATE, task);
+    }
+
+    /** Runs the task on the stripe for the key, after any tasks already waiting there with the same key or in a higher priority lane. */
+    public void execute(Object key, InboundPriority priority, Runnable task) {
+        stripes[stripeOf(key)].submit(key, priority, task);
+    }
+
+    /**
+     * Runs the task while every stripe is held, so it never runs at the same time as another task. Each stripe is held once it reaches the
+     * task, which waits in the given lane like any other, and is released once the task is done. The task runs on whichever stripe is
+     * reached last. Tasks run this way, one after another, run in the order submitted.
+     */
+    public void executeExclusive(InboundPriority priority, final Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down.");
+        }
+        final AtomicInteger remaining = new AtomicInteger(stripes.length);
+        final CountDownLatch done = new CountDownLatch(1);
+        Runnable hold = new Runnable() {
+
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    try {
+                        task.run();
+                    } finally {
+                        done.countDown();
+                    }
+                } else {
+                    awaitUninterruptibly(done);
+                }
+            }
+        };
+        Object key = new Object();
+        for (Stripe stripe : stripes) {
+            stripe.submit(key, priority, hold);
+        }
+    }
+
+    /**
+     * Runs the task once every stripe has finished the tasks submitted to it before this call. The task runs on whichever stripe finishes
+     * last, while the other stripes carry on, or on the calling thread if nothing was waiting.
+     */
+    public void afterPending(final Runnable task) {
+        final AtomicInteger remaining = new AtomicInteger(stripes.length);
+        Runnable countDown = new Runnable() {
+
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    task.run();
+                }
+            }
+        };
+        for (Stripe stripe : stripes) {
+            runAll(stripe.barrier(countDown));
+        }
+    }
+
+    /** Returns the number of tasks waiting to run on the given stripe. */
+    public int getQueuedTasks(int stripe) {
+        synchronized (stripes[stripe]) {
+            return stripes[stripe].queued;
+        }
+    }
+
+    /** Returns the number of tasks completed by the given stripe. */
+    public long getCompletedTasks(int stripe) {
+        synchronized (stripes[stripe]) {
+            return stripes[stripe].completed;
+        }
+    }
+
+    /** Returns the number of tasks waiting in the given lane, on all stripes. */
+    public int getQueuedTasks(InboundPriority priority) {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.lanes[priority.ordinal()].queued;
+            }
+        }
+        return total;
+    }
+
+    /** Returns the largest number of tasks which have waited in the given lane of any one stripe at one time. */
+    public int getMaxQueuedTasks(InboundPriority priority) {
+        int max = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                max = Math.max(max, stripe.lanes[priority.ordinal()].maxQueued);
+            }
+        }
+        return max;
+    }
+
+    /** Returns the number of tasks started from the given lane, on all stripes. */
+    public long getStartedTasks(InboundPriority priority) {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.lanes[priority.ordinal()].started;
+            }
+        }
+        return total;
+    }
+
+    /** Returns the average time, in milliseconds, tasks in the given lane waited before starting. */
+    public double getAverageWaitMillis(InboundPriority priority) {
+        long started = 0;
+        long waited = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                started += stripe.lanes[priority.ordinal()].started;
+                waited += stripe.lanes[priority.ordinal()].totalWaitNanos;
+            }
+        }
+        return (started == 0) ? 0 : waited / (started * 1e6);
+    }
+
+    /** Returns the longest time, in milliseconds, a task in the given lane waited before starting. */
+    public double getMaxWaitMillis(InboundPriority priority) {
+        long max = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                max = Math.max(max, stripe.lanes[priority.ordinal()].maxWaitNanos);
+            }
+        }
+        return max / 1e6;
+    }
+
+    /** Stops the worker threads once the tasks already submitted are done. Tasks submitted later are rejected. */
+    public void shutdown() {
+        shutdown = true;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.notifyAll();
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        if (tasks != null) {
+            for (Runnable task : tasks) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+    }
+
+}
@@ -27,14 +27,14 @@ public class Game {
 	public boolean needsAnnounce = true;
 	
     /**
-     * The number of people currently observing the game. Indexed by server game id.
+     * The people observing the game: how many now, the most at once, the average, and how many in all.
      */
-	public int observerCountCurrent = 0;
-	
+	public final ObserverStats observers = new ObserverStats();
+
     /**
-     * The max number of people who have concurrently observed the game. Indexed by server game id.
+     * The moves played so far, kept up to date as the server sends them while the bot observes the game.
      */
-	public int observerCountMax = 0;
+	public final MoveList moves = new MoveList();
 	
 	public String getStatusString() {
 		if (status.isPlaying()) {
@@ -0,0 +1,197 @@
+package org.chessworks.uscl.model;
+
+/**
+ * The moves played in a game, kept as a growable array of packed ints rather than as strings.
+ *
+ * Moves are read and written in Smith notation, as sent by the server when DG_MOVE_SMITH is on: the from and to squares, followed by an
+ * optional lowercase letter naming the captured piece, and an optional uppercase letter naming the promotion piece. Castling is marked with
+ * "c" (king side) or "C" (queen side), and en passant with "E". For example: "e2e4", "e4d5p", "e1g1c", "b7a8nQ".
+ *
+ * Each move is packed into one int:
+ * <ul>
+ * <li>bits 0-5: the from square, 0 (a1) to 63 (h8)</li>
+ * <li>bits 6-11: the to square</li>
+ * <li>bits 12-14: the promotion piece, or 0</li>
+ * <li>bits 15-17: the captured piece, or 0</li>
+ * <li>bits 18-19: the special move flag: {@link #CASTLE_SHORT}, {@link #CASTLE_LONG} or {@link #EN_PASSANT}, or 0</li>
+ * </ul>
+ *
+ * The list is updated one move at a time as the game is played, so the bot never needs to ask the server for the moves again. It is safe
+ * to read from other threads while the game's handler updates it.
+ *
+ * @author Doug Bateman
+ */
+public class MoveList {
+
+	public static final int PAWN = 1, KNIGHT = 2, BISHOP = 3, ROOK = 4, QUEEN = 5, KING = 6;
+
+	public static final int CASTLE_SHORT = 1, CASTLE_LONG = 2, EN_PASSANT = 3;
+
+	/** The piece letters, indexed by piece code. */
+	private static final String PIECES = " pnbrqk";
+
+	private int[] moves = new int[80];
+
+	private int size = 0;
+
+	/** Returns the number of half-moves played. */
+	public synchronized int size() {
+		return size;
+	}
+
+	/** Returns the packed form of the given half-move, counting from 0. */
+	public synchronized int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Move " + index + " of " + size);
+		}
+		return moves[index];
+	}
+
+	/** Returns a copy of the packed moves. */
+	public synchronized int[] toArray() {
+		int[] copy = new int[size];
+		System.arraycopy(moves, 0, copy, 0, size);
+		return copy;
+	}
+
+	/** Appends a packed move. */
+	public synchronized void add(int move) {
+		if (size == moves.length) {
+			int[] larger = new int[size * 2];
+			System.arraycopy(moves, 0, larger, 0, size);
+			moves = larger;
+		}
+		moves[size++] = move;
+	}
+
+	/**
+	 * Appends a move given in Smith notation.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the move isn't valid Smith notation.
+	 */
+	public void addSmith(String smith) {
+		add(parseSmith(smith));
+	}
+
+	/**
+	 * Removes the last moves, such as after a takeback. Removes all moves if there are fewer than <tt>count</tt>.
+	 */
+	public synchronized void back(int count) {
+		size = Math.max(0, size - count);
+	}
+
+	/** Removes all moves. */
+	public synchronized void clear() {
+		size = 0;
+	}
+
+	/** Returns the moves in Smith notation, separated by spaces. */
+	@Override
+	public synchronized String toString() {
+		StringBuilder s = new StringBuilder(size * 5);
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				s.append(' ');
+			}
+			appendSmith(s, moves[i]);
+		}
+		return s.toString();
+	}
+
+	public static int getFrom(int move) {
+		return move & 0x3f;
+	}
+
+	public static int getTo(int move) {
+		return (move >>> 6) & 0x3f;
+	}
+
+	public static int getPromotion(int move) {
+		return (move >>> 12) & 0x7;
+	}
+
+	public static int getCapture(int move) {
+		return (move >>> 15) & 0x7;
+	}
+
+	public static int getFlag(int move) {
+		return (move >>> 18) & 0x3;
+	}
+
+	/**
+	 * Packs a move given in Smith notation.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the move isn't valid Smith notation.
+	 */
+	public static int parseSmith(String smith) {
+		if (smith == null || smith.length() < 4) {
+			throw new IllegalArgumentException("Invalid move: " + smith);
+		}
+		int move = square(smith, 0) | (square(smith, 2) << 6);
+		for (int i = 4; i < smith.length(); i++) {
+			char c = smith.charAt(i);
+			if (c == 'c') {
+				move |= CASTLE_SHORT << 18;
+			} else if (c == 'C') {
+				move |= CASTLE_LONG << 18;
+			} else if (c == 'E') {
+				move |= (EN_PASSANT << 18) | (PAWN << 15);
+			} else if (Character.isLowerCase(c)) {
+				move |= piece(smith, c) << 15;
+			} else {
+				move |= piece(smith, Character.toLowerCase(c)) << 12;
+			}
+		}
+		return move;
+	}
+
+	/** Returns the move in Smith notation. */
+	public static String toSmith(int move) {
+		StringBuilder s = new StringBuilder(6);
+		appendSmith(s, move);
+		return s.toString();
+	}
+
+	private static void appendSmith(StringBuilder s, int move) {
+		appendSquare(s, getFrom(move));
+		appendSquare(s, getTo(move));
+		int flag = getFlag(move);
+		if (flag == CASTLE_SHORT) {
+			s.append('c');
+		} else if (flag == CASTLE_LONG) {
+			s.append('C');
+		} else if (flag == EN_PASSANT) {
+			s.append('E');
+		} else if (getCapture(move) != 0) {
+			s.append(PIECES.charAt(getCapture(move)));
+		}
+		if (getPromotion(move) != 0) {
+			s.append(Character.toUpperCase(PIECES.charAt(getPromotion(move))));
+		}
+	}
+
+	private static void appendSquare(StringBuilder s, int square) {
+		s.append((char) ('a' + (square & 7)));
+		s.append((char) ('1' + (square >>> 3)));
+	}
+
+	private static int square(String smith, int offset) {
+		char file = smith.charAt(offset);
+		char rank = smith.charAt(offset + 1);
+		if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+			throw new IllegalArgumentException("Invalid move: " + smith);
+		}
+		return (file - 'a') | ((rank - '1') << 3);
+	}
+
+	private static int piece(String smith, char c) {
+		int piece = PIECES.indexOf(c);
+		if (piece < PAWN || piece == KING) {
+			throw new IllegalArgumentException("Invalid move: " + smith);
+		}
+		return piece;
+	}
+
+}
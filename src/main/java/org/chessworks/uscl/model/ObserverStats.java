@@ -0,0 +1,173 @@
+package org.chessworks.uscl.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.chessworks.uscl.util.HyperLogLog;
+
+/**
+ * Statistics about the people observing a game: how many are watching now, the most at once, the average over time, and how many
+ * different people have watched.
+ *
+ * All updates are lock-free, so observers may come and go on any thread, and the statistics may be read at any time.
+ *
+ * The time-weighted average is the total time spent watching divided by the time since the statistics were reset. The total is kept as
+ * the sum of each observer's leaving time minus the sum of their arrival times, plus the time so far of those still watching, so it needs
+ * only two counters rather than a record of each observer.
+ *
+ * @author Doug Bateman
+ */
+public class ObserverStats {
+
+	/**
+	 * Observers arriving and leaving, gathered so they can be applied all at once. The batch remembers when each observer came and went,
+	 * and the most observers there were at once during the batch, so applying it gives the same statistics as applying each change.
+	 *
+	 * A batch is filled by one thread, then applied by another.
+	 */
+	public static final class Batch {
+		private final List<String> arrived = new ArrayList<String>();
+		private int departures = 0;
+		private long arrivalNanos = 0;
+		private long departureNanos = 0;
+		private int net = 0;
+		private int maxNet = 0;
+
+		/** Adds an observer arriving or leaving, at the given time, from System.nanoTime(). */
+		public void add(String handle, boolean arriving, long nanos) {
+			if (arriving) {
+				arrived.add(handle);
+				arrivalNanos += nanos;
+				net++;
+				maxNet = Math.max(maxNet, net);
+			} else {
+				departures++;
+				departureNanos += nanos;
+				net--;
+			}
+		}
+
+		/** Returns the number of arrivals and departures in the batch. */
+		public int size() {
+			return arrived.size() + departures;
+		}
+	}
+
+	private final AtomicInteger current = new AtomicInteger();
+
+	private final AtomicInteger peak = new AtomicInteger();
+
+	/** The sum of the times observers arrived, in milliseconds since the reset. */
+	private final LongAdder arrivalTimes = new LongAdder();
+
+	/** The sum of the times observers left, in milliseconds since the reset. */
+	private final LongAdder departureTimes = new LongAdder();
+
+	/** Estimates the number of different observers. */
+	private final HyperLogLog unique = new HyperLogLog();
+
+	/** When the statistics were last reset, from System.nanoTime(). */
+	private final AtomicLong startNanos = new AtomicLong(System.nanoTime());
+
+	/** Records an observer arriving. */
+	public void observerArrived(String handle) {
+		arrivalTimes.add(elapsedMillis());
+		unique.addIgnoreCase(handle);
+		int now = current.incrementAndGet();
+		int max = peak.get();
+		while (now > max && !peak.compareAndSet(max, now)) {
+			max = peak.get();
+		}
+	}
+
+	/** Records an observer leaving. Ignored if there are no observers, such as when one arrived before the statistics were reset. */
+	public void observerLeft(String handle) {
+		int n = current.get();
+		while (n > 0) {
+			if (current.compareAndSet(n, n - 1)) {
+				departureTimes.add(elapsedMillis());
+				return;
+			}
+			n = current.get();
+		}
+	}
+
+	/**
+	 * Applies a batch of observers arriving and leaving. Departures beyond the number of observers are ignored, as in
+	 * {@link #observerLeft(String)}.
+	 */
+	public void apply(Batch batch) {
+		long start = startNanos.get();
+		for (String handle : batch.arrived) {
+			unique.addIgnoreCase(handle);
+		}
+		int before;
+		int after;
+		do {
+			before = current.get();
+			after = Math.max(0, before + batch.net);
+		} while (!current.compareAndSet(before, after));
+		int arrivals = batch.arrived.size();
+		arrivalTimes.add((batch.arrivalNanos - arrivals * start) / 1000000L);
+		int departures = batch.departures - Math.max(0, -(before + batch.net));
+		if (departures == batch.departures) {
+			departureTimes.add((batch.departureNanos - departures * start) / 1000000L);
+		} else if (departures > 0) {
+			/* Some departures were ignored. Count the rest as leaving at the average departure time. */
+			departureTimes.add((batch.departureNanos / batch.departures - start) / 1000000L * departures);
+		}
+		int high = before + batch.maxNet;
+		int max = peak.get();
+		while (high > max && !peak.compareAndSet(max, high)) {
+			max = peak.get();
+		}
+	}
+
+	/** Returns the number of people observing now. */
+	public int getCurrent() {
+		return current.get();
+	}
+
+	/** Returns the most people who have observed at once. */
+	public int getPeak() {
+		return peak.get();
+	}
+
+	/** Returns the estimated number of different people who have observed. */
+	public long getUnique() {
+		return unique.estimate();
+	}
+
+	/** Returns the average number of people observing, over the time since the statistics were reset. */
+	public double getAverage() {
+		long elapsed = elapsedMillis();
+		if (elapsed <= 0) {
+			return current.get();
+		}
+		long watched = departureTimes.sum() - arrivalTimes.sum() + (long) current.get() * elapsed;
+		return Math.max(0, (double) watched / elapsed);
+	}
+
+	/** Forgets all observers, such as when a game starts or restarts. */
+	public void reset() {
+		current.set(0);
+		peak.set(0);
+		arrivalTimes.reset();
+		departureTimes.reset();
+		unique.clear();
+		startNanos.set(System.nanoTime());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d observers at peak, %.1f on average, %d in all", getPeak(), getAverage(), getUnique());
+	}
+
+	private long elapsedMillis() {
+		return (System.nanoTime() - startNanos.get()) / 1000000L;
+	}
+
+}
@@ -7,7 +7,7 @@ public class Player extends User {
 
 	public static final String WEBSITE_UNAVAILABLE = "Unavailable";
 
-	private PlayerState status = PlayerState.OFFLINE;
+	private volatile PlayerState status = PlayerState.OFFLINE;
 	private final Team team;
 	private String website = WEBSITE_UNAVAILABLE;
 
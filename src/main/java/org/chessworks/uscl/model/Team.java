@@ -1,7 +1,13 @@
 package org.chessworks.uscl.model;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+
+import org.chessworks.chess.model.RatingCategory;
 
 public class Team implements Comparable<Team>{
 
@@ -12,7 +18,12 @@ public class Team implements Comparable<Team>{
 	private String division = UNAVAILABLE;
 	private String location = UNAVAILABLE;
 	private String website = UNAVAILABLE;
-	private List<Player> players = new LinkedList<Player>();
+	private final Set<Player> players = new LinkedHashSet<Player>();
+	private final Set<Player> allPlayers = Collections.unmodifiableSet(players);
+
+	/** The players sorted by rating, and the category they were sorted by. Null until next asked for after the roster or ratings change. */
+	private List<Player> playersByRating;
+	private RatingCategory ratingCategory;
 
 	public Team(String teamCode) {
 		if (teamCode == null) {
@@ -30,8 +41,65 @@ public class Team implements Comparable<Team>{
 		return teamCode.compareTo(o.teamCode);
 	}
 
-	public List<Player> getPlayers() {
-		return players;
+	/**
+	 * Returns the team's players, in the order they joined the team. The set may not be modified; use {@link #addPlayer(Player)} and
+	 * {@link #removePlayer(Player)} instead.
+	 */
+	public Set<Player> getPlayers() {
+		return allPlayers;
+	}
+
+	/** Adds a player to the team. Returns false if he was already on the team. */
+	public synchronized boolean addPlayer(Player player) {
+		boolean added = players.add(player);
+		if (added) {
+			playersByRating = null;
+		}
+		return added;
+	}
+
+	/** Removes a player from the team. Returns false if he wasn't on the team. */
+	public synchronized boolean removePlayer(Player player) {
+		boolean removed = players.remove(player);
+		if (removed) {
+			playersByRating = null;
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns the team's players, highest rated first. Unrated players come last, and players with equal ratings are sorted by handle. The
+	 * list is kept until the roster changes or {@link #ratingsChanged()} is called, and may not be modified.
+	 */
+	public synchronized List<Player> getPlayersByRating(final RatingCategory category) {
+		if (playersByRating == null || !category.equals(ratingCategory)) {
+			List<Player> list = new ArrayList<Player>(players);
+			Collections.sort(list, new Comparator<Player>() {
+
+				@Override
+				public int compare(Player p1, Player p2) {
+					int r1 = rating(p1, category);
+					int r2 = rating(p2, category);
+					if (r1 != r2) {
+						return (r1 > r2) ? -1 : 1;
+					}
+					return p1.compareTo(p2);
+				}
+			});
+			playersByRating = Collections.unmodifiableList(list);
+			ratingCategory = category;
+		}
+		return playersByRating;
+	}
+
+	/** Tells the team one of its players' ratings has changed, so its players must be sorted again. */
+	public synchronized void ratingsChanged() {
+		playersByRating = null;
+	}
+
+	private static int rating(Player player, RatingCategory category) {
+		Integer r = player.ratings().get(category);
+		return (r == null) ? -1 : r;
 	}
 
 	public String getTeamCode() {
@@ -0,0 +1,41 @@
+package org.chessworks.uscl.outbound;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sink which captures commands instead of sending them to the server, used when replaying recorded datagrams offline. Commands are
+ * counted, and optionally written out one per line, so the bot's responses to a replayed round can be compared between versions.
+ *
+ * @author Doug Bateman
+ */
+public class CapturingSink implements OutboundQueue.Sink {
+
+    private final PrintWriter out;
+
+    private final AtomicLong captured = new AtomicLong();
+
+    /**
+     * @param out
+     *            Where to write the captured commands, or null to only count them.
+     */
+    public CapturingSink(PrintWriter out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(String command) {
+        captured.incrementAndGet();
+        if (out != null) {
+            synchronized (out) {
+                out.println(command);
+            }
+        }
+    }
+
+    /** Returns the number of commands captured. */
+    public long getCaptured() {
+        return captured.get();
+    }
+
+}
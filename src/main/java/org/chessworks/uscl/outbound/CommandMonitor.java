@@ -0,0 +1,190 @@
+package org.chessworks.uscl.outbound;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a record of the commands recently sent to the server, for debugging.
+ *
+ * The bot used to echo every command to each programmer as a qtell, which doubled the outbound traffic. Instead, commands are kept in a
+ * fixed-size ring buffer in memory. Managers may tail the buffer on demand, or subscribe to it. Subscribers receive a filtered, sampled
+ * digest of new commands every few seconds, as a single qtell sent in the {@link Priority#BULK bulk} lane.
+ *
+ * @author Doug Bateman
+ */
+public class CommandMonitor {
+
+    /** Digests are split into qtells no longer than this. */
+    private static final int DIGEST_LINE_LIMIT = 1000;
+
+    /** A manager's subscription to the outbound commands. */
+    private static final class Subscription {
+        final int sampleEvery;
+        final String filter;
+        long nextSequence;
+        long matched;
+
+        Subscription(int sampleEvery, String filter, long nextSequence) {
+            this.sampleEvery = sampleEvery;
+            this.filter = filter;
+            this.nextSequence = nextSequence;
+        }
+    }
+
+    private final String[] commands;
+    private final long[] times;
+
+    /** The sequence number of the next command recorded. Command n is stored at index (n % capacity). */
+    private long sequence = 0;
+
+    /** Subscriptions, by handle. */
+    private final Map<String, Subscription> subscribers = new LinkedHashMap<String, Subscription>();
+
+    private OutboundQueue outbound;
+
+    /**
+     * @param capacity
+     *            The number of recent commands to remember.
+     */
+    public CommandMonitor(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        this.commands = new String[capacity];
+        this.times = new long[capacity];
+    }
+
+    /** Sets the queue used to deliver digests to subscribers. */
+    public synchronized void setOutboundQueue(OutboundQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    /** Records a command sent to the server. */
+    public synchronized void record(String command) {
+        int i = (int) (sequence % commands.length);
+        commands[i] = command;
+        times[i] = System.currentTimeMillis();
+        sequence++;
+    }
+
+    /**
+     * Returns up to <tt>count</tt> of the most recently recorded commands, oldest first, each prefixed by the time it was sent.
+     *
+     * @param filter
+     *            If not empty, only commands containing this text (ignoring case) are returned.
+     */
+    public synchronized List<String> tail(int count, String filter) {
+        String match = filter.trim().toLowerCase();
+        List<String> result = new ArrayList<String>();
+        SimpleDateFormat clock = new SimpleDateFormat("HH:mm:ss");
+        long oldest = Math.max(0, sequence - commands.length);
+        for (long n = sequence - 1; n >= oldest && result.size() < count; n--) {
+            int i = (int) (n % commands.length);
+            if (matches(commands[i], match)) {
+                result.add(clock.format(new Date(times[i])) + " " + commands[i]);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Subscribes the user to the commands sent from now on, replacing any earlier subscription.
+     *
+     * @param sampleEvery
+     *            Deliver one of every <tt>sampleEvery</tt> matching commands. Use 1 to receive them all.
+     * @param filter
+     *            If not empty, only commands containing this text (ignoring case) are delivered.
+     */
+    public synchronized void subscribe(String handle, int sampleEvery, String filter) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("The sampling rate must be at least 1.");
+        }
+        String match = filter.trim().toLowerCase();
+        subscribers.put(handle.toLowerCase(), new Subscription(sampleEvery, match, sequence));
+    }
+
+    /**
+     * Cancels the user's subscription.
+     *
+     * @return true if the user was subscribed.
+     */
+    public synchronized boolean unsubscribe(String handle) {
+        return subscribers.remove(handle.toLowerCase()) != null;
+    }
+
+    /**
+     * Sends each subscriber a digest of the matching commands recorded since the last delivery. Called periodically by the bot's scheduler.
+     */
+    public void deliver() {
+        OutboundQueue queue;
+        List<List<String>> digests;
+        synchronized (this) {
+            queue = outbound;
+            if (queue == null) {
+                return;
+            }
+            digests = collectDigests();
+        }
+        /* Submit outside the lock, so a full bulk lane never holds up record() on the reader thread. */
+        for (List<String> unit : digests) {
+            queue.submit(Priority.BULK, unit);
+        }
+    }
+
+    private List<List<String>> collectDigests() {
+        List<List<String>> digests = new ArrayList<List<String>>();
+        long oldest = Math.max(0, sequence - commands.length);
+        for (Map.Entry<String, Subscription> entry : subscribers.entrySet()) {
+            String handle = entry.getKey();
+            Subscription sub = entry.getValue();
+            if (sub.nextSequence == sequence) {
+                continue;
+            }
+            String prefix = "qtell " + handle + " ";
+            StringBuilder qtell = new StringBuilder(prefix);
+            List<String> unit = new ArrayList<String>();
+            if (sub.nextSequence < oldest) {
+                qtell.append(" (").append(oldest - sub.nextSequence).append(" commands were missed)\\n");
+                sub.nextSequence = oldest;
+            }
+            for (long n = sub.nextSequence; n < sequence; n++) {
+                String command = commands[(int) (n % commands.length)];
+                if (!matches(command, sub.filter)) {
+                    continue;
+                }
+                if (sub.matched++ % sub.sampleEvery != 0) {
+                    continue;
+                }
+                String line = " -  " + command + "\\n";
+                if (qtell.length() + line.length() > DIGEST_LINE_LIMIT && qtell.length() > prefix.length()) {
+                    unit.add(qtell.toString());
+                    qtell.setLength(0);
+                    qtell.append(prefix);
+                }
+                qtell.append(line);
+            }
+            sub.nextSequence = sequence;
+            if (qtell.length() > prefix.length()) {
+                unit.add(qtell.toString());
+            }
+            if (!unit.isEmpty()) {
+                digests.add(unit);
+            }
+        }
+        return digests;
+    }
+
+    private static boolean matches(String command, String filter) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        return command.toLowerCase().contains(filter);
+    }
+
+}
@@ -0,0 +1,314 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.chessworks.uscl.util.LatencyHistogram;
+
+/**
+ * Schedules commands bound for the chess server. Commands wait in one of several {@link Priority} lanes, and are released to the server
+ * no faster than the {@link TokenBucket} allows. Time-critical commands therefore never wait behind bulk traffic, and the bot stays under the
+ * server's flood threshold.
+ *
+ * Commands are submitted in units. A unit is a list of commands which must reach the server together and in order, such as an admin
+ * on/off bracket and the commands inside it. Units are never interleaved with one another.
+ *
+ * All writes happen on a dedicated writer thread, so a slow socket or a long burst of commands never holds up the thread that submitted
+ * them. Submitting never waits. Each lane has a capacity: once the bulk lane is full, further bulk units are dropped, which keeps a runaway
+ * job from exhausting memory. The critical and announcement lanes are never dropped from, so past their capacity they simply grow, and the
+ * overflow is counted so it shows up in the statistics.
+ *
+ * A unit sent in response to a datagram carries the time the datagram was received. Once the unit is written, the time from the datagram
+ * arriving to the response leaving is recorded, so the latency includes any time spent waiting in the queue.
+ *
+ * @author Doug Bateman
+ */
+public class OutboundQueue {
+
+    /** The destination for commands released by the queue. Typically this is the connection to the chess server. */
+    public interface Sink {
+        void write(String command);
+    }
+
+    /** Marks a unit which wasn't sent in response to a datagram. */
+    public static final long NO_DATAGRAM = Long.MIN_VALUE;
+
+    /** A unit waiting in a lane, when it was queued, and when the datagram it responds to was received. */
+    private static final class Entry {
+        final List<String> unit;
+        final long queuedAt;
+        final long receivedAt;
+
+        Entry(List<String> unit, long queuedAt, long receivedAt) {
+            this.unit = unit;
+            this.queuedAt = queuedAt;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /** The units waiting in a lane, along with the lane's statistics. */
+    private static final class Lane {
+        final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+        int maxQueued;
+        long writtenUnits;
+        long writtenCommands;
+        long totalWaitNanos;
+        long overCapacity;
+        long dropped;
+    }
+
+    private final Sink sink;
+    private final TokenBucket limiter;
+    private final int laneCapacity;
+    private final Lane[] lanes;
+    private final Thread writer;
+
+    /** How long from a datagram being received until the units sent in response to it were written. */
+    private final LatencyHistogram datagramLatency = new LatencyHistogram();
+
+    /** True while the writer thread is writing a unit to the sink. */
+    private boolean writing = false;
+
+    /** While true, units are written as fast as possible, ignoring the rate limit. Used when shutting down. */
+    private boolean flushing = false;
+
+    /** When the last unit finished being written, per {@link System#nanoTime()}. */
+    private long lastWriteNanos = System.nanoTime();
+
+    /**
+     * @param sink
+     *            The destination for commands released from the queue.
+     * @param limiter
+     *            Limits the rate at which commands are released.
+     * @param laneCapacity
+     *            The number of units each lane may hold before bulk units are dropped.
+     */
+    public OutboundQueue(Sink sink, TokenBucket limiter, int laneCapacity) {
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("laneCapacity must be at least 1.");
+        }
+        this.sink = sink;
+        this.limiter = limiter;
+        this.laneCapacity = laneCapacity;
+        this.lanes = new Lane[Priority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "USCL-Bot outbound writer");
+        this.writer.setDaemon(true);
+    }
+
+    /** Starts the writer thread. */
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues a unit of commands to be sent to the server. Never waits. If the lane is full, a {@link Priority#BULK bulk} unit is dropped,
+     * while any other unit is queued anyway.
+     *
+     * @param priority
+     *            The lane in which the unit waits.
+     * @param unit
+     *            The commands, which will be written together and in order.
+     * @return false if the unit was dropped.
+     */
+    public boolean submit(Priority priority, List<String> unit) {
+        return submit(priority, unit, NO_DATAGRAM);
+    }
+
+    /**
+     * Queues a unit of commands sent in response to a datagram. Never waits. If the lane is full, a {@link Priority#BULK bulk} unit is
+     * dropped, while any other unit is queued anyway.
+     *
+     * @param priority
+     *            The lane in which the unit waits.
+     * @param unit
+     *            The commands, which will be written together and in order.
+     * @param receivedAt
+     *            When the datagram was received, per {@link System#nanoTime()}, or {@link #NO_DATAGRAM}.
+     * @return false if the unit was dropped.
+     */
+    public synchronized boolean submit(Priority priority, List<String> unit, long receivedAt) {
+        if (unit.isEmpty()) {
+            return true;
+        }
+        Lane lane = lanes[priority.ordinal()];
+        if (lane.entries.size() >= laneCapacity) {
+            lane.overCapacity++;
+            if (priority == Priority.BULK) {
+                lane.dropped++;
+                return false;
+            }
+        }
+        lane.entries.add(new Entry(unit, System.nanoTime(), receivedAt));
+        lane.maxQueued = Math.max(lane.maxQueued, lane.entries.size());
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Writes out everything waiting in the queue, ignoring the rate limit, and waits for it to reach the sink. This is used when shutting
+     * down, so the final commands (such as good-bye messages) aren't lost.
+     *
+     * @param timeout
+     *            The maximum time to wait, in milliseconds.
+     * @return true if the queue was emptied, or false if the time ran out first.
+     */
+    public synchronized boolean flush(long timeout) {
+        flushing = true;
+        notifyAll();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while (writing || hasQueuedUnits()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            flushing = false;
+        }
+    }
+
+    /** Returns true if nothing is waiting in the queue or being written. */
+    public synchronized boolean isIdle() {
+        return !writing && !hasQueuedUnits();
+    }
+
+    /** Returns when the last unit finished being written, per {@link System#nanoTime()}. */
+    public synchronized long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /** Returns the number of units waiting in the given lane. */
+    public synchronized int getQueuedUnits(Priority priority) {
+        return lanes[priority.ordinal()].entries.size();
+    }
+
+    /** Returns the largest number of units which have waited in the given lane at one time. */
+    public synchronized int getMaxQueuedUnits(Priority priority) {
+        return lanes[priority.ordinal()].maxQueued;
+    }
+
+    /** Returns the number of units written from the given lane. */
+    public synchronized long getWrittenUnits(Priority priority) {
+        return lanes[priority.ordinal()].writtenUnits;
+    }
+
+    /** Returns the number of commands written from the given lane. */
+    public synchronized long getWrittenCommands(Priority priority) {
+        return lanes[priority.ordinal()].writtenCommands;
+    }
+
+    /** Returns the average time, in milliseconds, units in the given lane waited before being written. */
+    public synchronized double getAverageWaitMillis(Priority priority) {
+        Lane lane = lanes[priority.ordinal()];
+        if (lane.writtenUnits == 0) {
+            return 0;
+        }
+        return lane.totalWaitNanos / (lane.writtenUnits * 1e6);
+    }
+
+    /** Returns the number of units submitted to the given lane while it was full, whether they were queued or dropped. */
+    public synchronized long getOverCapacityUnits(Priority priority) {
+        return lanes[priority.ordinal()].overCapacity;
+    }
+
+    /** Returns the number of units dropped because the given lane was full. Only bulk units are ever dropped. */
+    public synchronized long getDroppedUnits(Priority priority) {
+        return lanes[priority.ordinal()].dropped;
+    }
+
+    /** Returns how long from a datagram being received until the units sent in response to it were written. */
+    public LatencyHistogram getDatagramLatency() {
+        return datagramLatency;
+    }
+
+    private boolean hasQueuedUnits() {
+        for (Lane lane : lanes) {
+            if (!lane.entries.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes waiting units to the sink, highest priority first, as the rate limit allows. Runs on the writer thread.
+     */
+    private void writeLoop() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = takeNextUnit();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                for (String command : entry.unit) {
+                    sink.write(command);
+                }
+                if (entry.receivedAt != NO_DATAGRAM) {
+                    datagramLatency.record(System.nanoTime() - entry.receivedAt);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace(System.err);
+            } finally {
+                synchronized (this) {
+                    writing = false;
+                    lastWriteNanos = System.nanoTime();
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next unit the rate limit allows to be written, and removes it from its lane.
+     */
+    private synchronized Entry takeNextUnit() throws InterruptedException {
+        while (true) {
+            Lane lane = highestNonEmptyLane();
+            if (lane == null) {
+                wait();
+                continue;
+            }
+            Entry entry = lane.entries.peek();
+            long waitNanos = flushing ? 0 : limiter.tryAcquire(entry.unit.size());
+            if (waitNanos > 0) {
+                /* Wake early if flushing begins. A more urgent unit arriving meanwhile is picked up on the next pass. */
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                continue;
+            }
+            lane.entries.poll();
+            lane.writtenUnits++;
+            lane.writtenCommands += entry.unit.size();
+            lane.totalWaitNanos += System.nanoTime() - entry.queuedAt;
+            writing = true;
+            notifyAll();
+            return entry;
+        }
+    }
+
+    private Lane highestNonEmptyLane() {
+        for (Lane lane : lanes) {
+            if (!lane.entries.isEmpty()) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,29 @@
+package org.chessworks.uscl.outbound;
+
+/**
+ * The lanes of the {@link OutboundQueue}. Commands in a higher priority lane are always sent before those waiting in a lower priority lane.
+ *
+ * @author Doug Bateman
+ */
+public enum Priority {
+
+    /** Alerts, replies to managers, and game-critical commands such as reserve-game. */
+    CRITICAL,
+
+    /** Channel announcements, shouts, and the like. */
+    ANNOUNCEMENT,
+
+    /** Bulk jobs, such as refresh-all-profiles, which may safely wait behind everything else. */
+    BULK;
+
+    /** Returns whichever of the two priorities is the higher. */
+    public Priority highest(Priority other) {
+        return (this.compareTo(other) <= 0) ? this : other;
+    }
+
+    /** Returns whichever of the two priorities is the lower. */
+    public Priority lowest(Priority other) {
+        return (this.compareTo(other) >= 0) ? this : other;
+    }
+
+}
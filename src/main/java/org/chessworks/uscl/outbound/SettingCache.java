@@ -0,0 +1,191 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers the last value the bot pushed to the server for each player's settings, so commands which merely repeat a setting the server
+ * already has can be skipped.
+ *
+ * For example, "qset Shirov-NYC isolated 1" is sent both when a game is set up and again when it starts, and "set busy 2" is spoofed both
+ * by rematch and when the bot begins observing the game. Only the first of each needs to reach the server.
+ *
+ * The following commands are understood. Anything else is never considered redundant.
+ * <ul>
+ * <li><tt>set var value</tt>, which changes the setting of the issuing user (typically a spoofed player).</li>
+ * <li><tt>set-other handle var value</tt>, which changes the same setting of another user.</li>
+ * <li><tt>qset handle var value</tt></li>
+ * <li><tt>+notify handle</tt> and <tt>-notify handle</tt>, which change the issuing user's notify list. <tt>-notify *</tt> clears it.</li>
+ * </ul>
+ *
+ * A player may change his own settings, so an entry is only trusted for a limited time, and all entries for a player are forgotten when he
+ * arrives or departs.
+ *
+ * @author Doug Bateman
+ */
+public class SettingCache {
+
+    /** A value sent to the server, and when. */
+    private static final class Value {
+        final String value;
+        final long sentAt;
+
+        Value(String value, long sentAt) {
+            this.value = value;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /** A setting parsed from a command. */
+    private static final class Setting {
+        final String handle;
+        final String name;
+        final String value;
+
+        Setting(String handle, String name, String value) {
+            this.handle = handle.toLowerCase();
+            this.name = name.toLowerCase();
+            this.value = value;
+        }
+    }
+
+    /** The settings sent to the server, by lowercase handle, then by setting name. */
+    private final Map<String, Map<String, Value>> settings = new HashMap<String, Map<String, Value>>();
+
+    private long windowMillis;
+
+    private long suppressed = 0;
+
+    /**
+     * @param windowMillis
+     *            How long, in milliseconds, a setting sent to the server is trusted to still be in force.
+     */
+    public SettingCache(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /** Sets how long, in milliseconds, a setting sent to the server is trusted to still be in force. */
+    public synchronized void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Returns true if the command would only repeat a setting recently sent to the server.
+     *
+     * @param issuer
+     *            The user who issues the command: the spoofed player, or the bot itself.
+     */
+    public synchronized boolean isRedundant(String issuer, String command) {
+        Setting setting = parse(issuer, command);
+        if (setting == null) {
+            return false;
+        }
+        Map<String, Value> values = settings.get(setting.handle);
+        if (values == null) {
+            return false;
+        }
+        Value last = values.get(setting.name);
+        if (last == null || !last.value.equals(setting.value)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - last.sentAt > windowMillis) {
+            return false;
+        }
+        suppressed++;
+        return true;
+    }
+
+    /**
+     * Remembers the setting changed by a command being sent to the server.
+     *
+     * @param issuer
+     *            The user who issues the command: the spoofed player, or the bot itself.
+     */
+    public synchronized void record(String issuer, String command) {
+        if (isClearNotify(command)) {
+            Map<String, Value> values = settings.get(issuer.toLowerCase());
+            if (values != null) {
+                Iterator<String> i = values.keySet().iterator();
+                while (i.hasNext()) {
+                    if (i.next().startsWith("notify ")) {
+                        i.remove();
+                    }
+                }
+            }
+            return;
+        }
+        Setting setting = parse(issuer, command);
+        if (setting == null) {
+            return;
+        }
+        Map<String, Value> values = settings.get(setting.handle);
+        if (values == null) {
+            values = new HashMap<String, Value>();
+            settings.put(setting.handle, values);
+        }
+        values.put(setting.name, new Value(setting.value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Forgets the setting changed by a command which was recorded but never reached the server, such as one dropped from a full outbound
+     * lane.
+     *
+     * @param issuer
+     *            The user who issues the command: the spoofed player, or the bot itself.
+     */
+    public synchronized void forget(String issuer, String command) {
+        Setting setting = parse(issuer, command);
+        if (setting == null) {
+            return;
+        }
+        Map<String, Value> values = settings.get(setting.handle);
+        if (values != null) {
+            values.remove(setting.name);
+        }
+    }
+
+    /**
+     * Forgets all settings sent for the player, such as when he arrives or departs.
+     */
+    public synchronized void invalidate(String handle) {
+        settings.remove(handle.toLowerCase());
+    }
+
+    /** Forgets all settings. */
+    public synchronized void clear() {
+        settings.clear();
+    }
+
+    /** Returns the number of commands found to be redundant. */
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    private static boolean isClearNotify(String command) {
+        return command.trim().equals("-notify *");
+    }
+
+    /**
+     * Parses a command which changes a setting. Returns null for any other command, including compound commands.
+     */
+    private static Setting parse(String issuer, String command) {
+        if (command.indexOf(';') >= 0) {
+            return null;
+        }
+        String[] words = command.trim().split("\\s+", 4);
+        String verb = words[0];
+        if (verb.equals("set") && words.length >= 3) {
+            String value = (words.length == 4) ? words[2] + " " + words[3] : words[2];
+            return new Setting(issuer, "set " + words[1], value);
+        } else if (verb.equals("set-other") && words.length == 4) {
+            return new Setting(words[1], "set " + words[2], words[3]);
+        } else if (verb.equals("qset") && words.length == 4) {
+            return new Setting(words[1], "qset " + words[2], words[3]);
+        } else if ((verb.equals("+notify") || verb.equals("-notify")) && words.length == 2 && !words[1].equals("*")) {
+            return new Setting(issuer, "notify " + words[1].toLowerCase(), verb.substring(0, 1));
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token-bucket rate limiter. Tokens accumulate at a fixed rate, up to the size of the bucket, and each command sent to the server spends
+ * one token.
+ *
+ * A request may spend more tokens than are in the bucket, so long as the bucket holds at least one whole token. The bucket then goes into
+ * debt, which is paid off before any further requests are granted. This lets a group of commands which must be sent together (such as an admin bracket) go out
+ * as a unit, while still holding the long-term rate to the configured limit.
+ *
+ * @author Doug Bateman
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param tokensPerSecond
+     *            The rate at which tokens are added to the bucket.
+     * @param capacity
+     *            The maximum number of tokens the bucket holds. This is the largest burst sent without waiting.
+     */
+    public TokenBucket(double tokensPerSecond, int capacity) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("tokensPerSecond must be positive.");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Attempts to spend the given number of tokens.
+     *
+     * @return zero if the tokens were spent, or else the number of nanoseconds to wait before trying again.
+     */
+    public synchronized long tryAcquire(int count) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= count;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        return Math.max(wait, 1);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefill;
+        lastRefill = now;
+        tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+    }
+
+}
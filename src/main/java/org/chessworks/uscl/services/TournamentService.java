@@ -3,6 +3,7 @@ package org.chessworks.uscl.services;
 import java.io.Flushable;
 import java.util.Collection;
 
+import org.chessworks.chess.model.PlayerState;
 import org.chessworks.uscl.model.Game;
 import org.chessworks.uscl.model.GameState;
 import org.chessworks.uscl.model.Player;
@@ -18,16 +19,20 @@ public interface TournamentService extends Flushable {
 
     Player findPlayer(String handle);
 
+    /** Returns the players online, sorted. The collection never changes, so callers may keep it while players come and go. */
     Collection<Player> findOnlinePlayers();
 
     Collection<Player> findAllPlayers();
 
+    /** Returns the scheduled players, sorted. The collection never changes, so callers may keep it while the schedule changes. */
     Collection<Player> findScheduledPlayers();
 
     boolean removePlayer(Player player);
 
     void updatePlayer(Player player);
 
+    void updatePlayerState(Player player, PlayerState state);
+
     Team createTeam(String teamCode) throws InvalidTeamException;
 
     Team findOrCreateTeam(String handle) throws InvalidTeamException;
@@ -70,7 +70,7 @@ public class FileTournamentService extends SimpleTournamentService {
 
 	@Override
     public void updateGameStatus(Game game, GameState status) {
-        game.status = status;
+        super.updateGameStatus(game, status);
         scheduleIO.setDirty();
     }
 
@@ -188,6 +188,7 @@ public class FileTournamentService extends SimpleTournamentService {
 				Player p = FileTournamentService.super.createPlayer(handle, team);
 				p.setRealName(realName);
 				p.ratings().put(USCLBot.USCL_RATING, rating);
+				team.ratingsChanged();
 				if (titleStr != null) {
 					Set<Title> titles = p.getTitles();
 					String[] titleNames = CollectionHelper.split(titleStr);
@@ -27,7 +27,7 @@ public class UsclSettingsService extends FileSettingsService {
 		return handle;
 	}
 
-	public int getAndIncrementNextLibrarySlot() {
+	public synchronized int getAndIncrementNextLibrarySlot() {
 		int slot = getSetting(LIBRARY_NEXTSLOT, Integer.class);
 		if (slot >= 400)
 			throw new IllegalStateException("Exceeded maximum library side of 400.");
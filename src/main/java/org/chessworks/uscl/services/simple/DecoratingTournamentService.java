@@ -2,6 +2,7 @@ package org.chessworks.uscl.services.simple;
 
 import java.util.Collection;
 
+import org.chessworks.chess.model.PlayerState;
 import org.chessworks.uscl.model.Game;
 import org.chessworks.uscl.model.GameState;
 import org.chessworks.uscl.model.Player;
@@ -20,6 +21,14 @@ public class DecoratingTournamentService implements TournamentService {
 
 	private TournamentService service;
 
+	/**
+	 * @param service
+	 *            The underlying service, to which all calls are delegated.
+	 */
+	public DecoratingTournamentService(TournamentService service) {
+		this.service = service;
+	}
+
 	/**
 	 * Delegates all calls to the underlying {@link TournamentService}.
 	 *
@@ -286,6 +295,16 @@ public class DecoratingTournamentService implements TournamentService {
 		service.updatePlayer(player);
 	}
 
+	/**
+	 * Delegates all calls to the underlying {@link TournamentService}.
+	 *
+	 * @see org.chessworks.uscl.services.TournamentService#updatePlayerState(Player, PlayerState)
+	 */
+	@Override
+	public void updatePlayerState(Player player, PlayerState state) {
+		service.updatePlayerState(player, state);
+	}
+
 	/**
 	 * Delegates all calls to the underlying {@link TournamentService}.
 	 *
@@ -3,13 +3,15 @@ package org.chessworks.uscl.services.simple;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
+import org.chessworks.chess.model.PlayerState;
 import org.chessworks.common.service.BasicLifecycle;
 import org.chessworks.uscl.model.Game;
 import org.chessworks.uscl.model.GameState;
@@ -18,24 +20,73 @@ import org.chessworks.uscl.model.Team;
 import org.chessworks.uscl.services.InvalidPlayerException;
 import org.chessworks.uscl.services.InvalidTeamException;
 import org.chessworks.uscl.services.TournamentService;
+import org.chessworks.uscl.util.HandleMap;
 
 public class SimpleTournamentService extends BasicLifecycle implements TournamentService {
 
+	/** Two teams, in either order. Used as the key of the match index. */
+	private static final class TeamPair {
+		private final Team team1;
+		private final Team team2;
+
+		TeamPair(Team team1, Team team2) {
+			this.team1 = team1;
+			this.team2 = team2;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TeamPair))
+				return false;
+			TeamPair other = (TeamPair) o;
+			return (team1.equals(other.team1) && team2.equals(other.team2)) || (team1.equals(other.team2) && team2.equals(other.team1));
+		}
+
+		@Override
+		public int hashCode() {
+			return team1.hashCode() + team2.hashCode();
+		}
+	}
+
 	/** Map players to games */
 	private final Map<Player, Game> playerBoards = new LinkedHashMap<Player, Game>();
 
+	/** The scheduled players, sorted. Rebuilt when next asked for after the schedule changes, and null until then. */
+	private volatile List<Player> scheduledPlayers;
+
 	/** Map board numbers to games */
 	private final Map<Integer, Game> boards = new TreeMap<Integer, Game>();
 
-	/** Map codes to teams */
+	/** Map each pair of teams to the games of their match, by board number */
+	private final Map<TeamPair, Map<Integer, Game>> matchGames = new HashMap<TeamPair, Map<Integer, Game>>();
+
+	/** Map games to the pair of teams they're indexed under, in case their players change */
+	private final Map<Game, TeamPair> gameMatches = new HashMap<Game, TeamPair>();
+
+	/** The players online, sorted by handle. */
+	private final Set<Player> onlinePlayers = new TreeSet<Player>();
+
+	/**
+	 * A copy of the players online, which is never modified, so callers may keep it while players come and go. Rebuilt when next asked
+	 * for after a player comes or goes, and null until then.
+	 */
+	private volatile Set<Player> onlineSnapshot;
+
+	/** Map codes to teams, sorted for listing */
 	private final Map<String, Team> teams;
 
+	/** Map codes to teams, in any case, for lookups */
+	private final HandleMap<Team> teamIndex = new HandleMap<Team>();
+
 	/** A read-only wrapper for returning all teams. */
 	private final Collection<Team> allTeams;
 
-	/** Map handles to players */
+	/** Map handles to players, sorted for listing */
 	private final Map<String, Player> players;
 
+	/** Map handles to players, in any case, for lookups */
+	private final HandleMap<Player> playerIndex = new HandleMap<Player>(2048);
+
 	/** A read-only wrapper for returning all players. */
 	private final Collection<Player> allPlayers;
 
@@ -55,6 +106,9 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	public void clearSchedule() {
 		playerBoards.clear();
 		boards.clear();
+		matchGames.clear();
+		gameMatches.clear();
+		scheduledPlayers = null;
 	}
 
 	/**
@@ -78,11 +132,17 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Game scheduleGame(Game game) {
+		Game replaced = boards.get(game.boardNumber);
+		if (replaced != null && replaced != game) {
+			removeGame(replaced);
+		}
 		Player white = game.whitePlayer;
 		Player black = game.blackPlayer;
 		playerBoards.put(white, game);
 		playerBoards.put(black,  game);
 		boards.put(game.boardNumber, game);
+		indexMatch(game);
+		scheduledPlayers = null;
 		return game;
 	}
 
@@ -95,14 +155,24 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	public Game cancelGame(Game game) {
 		if (game == null)
 			return null;
-		if (!boards.containsValue(game))
+		/* A game is scheduled only if it's still the one on its board. */
+		if (boards.get(game.boardNumber) != game)
 			return null;
+		removeGame(game);
+		return game;
+	}
+
+	/** Takes a scheduled game off its board. Its players keep any other game they've since been scheduled for. */
+	private void removeGame(Game game) {
 		Player white = game.whitePlayer;
 		Player black = game.blackPlayer;
-		playerBoards.remove(white);
-		playerBoards.remove(black);
+		if (playerBoards.get(white) == game)
+			playerBoards.remove(white);
+		if (playerBoards.get(black) == game)
+			playerBoards.remove(black);
 		boards.remove(game.boardNumber);
-		return game;
+		unindexMatch(game);
+		scheduledPlayers = null;
 	}
 
 	/**
@@ -170,14 +240,41 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
      */
     @Override
     public Collection<Game> findMatchGames(Team team1, Team team2) {
-        Collection<Game> results = new ArrayList<Game>();
-        for (Game game : boards.values()) {
-            if ((game.whitePlayer.getTeam().equals(team1) && game.blackPlayer.getTeam().equals(team2))
-                    || (game.whitePlayer.getTeam().equals(team2) && game.blackPlayer.getTeam().equals(team1))) {
-                results.add(game);
-            }
+        Map<Integer, Game> games = matchGames.get(new TeamPair(team1, team2));
+        if (games == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(new ArrayList<Game>(games.values()));
+    }
+
+    /** Adds the game to the match index, under its players' teams, moving it if its players have changed teams. */
+    private void indexMatch(Game game) {
+        TeamPair pair = new TeamPair(game.whitePlayer.getTeam(), game.blackPlayer.getTeam());
+        TeamPair old = gameMatches.get(game);
+        if (pair.equals(old)) {
+            return;
+        }
+        unindexMatch(game);
+        Map<Integer, Game> games = matchGames.get(pair);
+        if (games == null) {
+            games = new TreeMap<Integer, Game>();
+            matchGames.put(pair, games);
+        }
+        games.put(game.boardNumber, game);
+        gameMatches.put(game, pair);
+    }
+
+    /** Removes the game from the match index. */
+    private void unindexMatch(Game game) {
+        TeamPair pair = gameMatches.remove(game);
+        if (pair == null) {
+            return;
+        }
+        Map<Integer, Game> games = matchGames.get(pair);
+        games.remove(game.boardNumber);
+        if (games.isEmpty()) {
+            matchGames.remove(pair);
         }
-        return Collections.unmodifiableCollection(results);
     }
     
 	/**
@@ -189,7 +286,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Player findOrCreatePlayer(String handle) throws InvalidPlayerException, InvalidTeamException {
-		Player p = players.get(handle.toLowerCase());
+		Player p = playerIndex.get(handle);
 		if (p == null) {
 			p = createPlayer(handle);
 		}
@@ -203,7 +300,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Player findPlayer(String handle) {
-		Player p = players.get(handle.toLowerCase());
+		Player p = playerIndex.get(handle);
 		return p;
 	}
 
@@ -215,7 +312,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Team findOrCreateTeam(String handle) throws InvalidTeamException {
-		Team t = teams.get(handle.toUpperCase());
+		Team t = teamIndex.get(handle);
 		if (t == null) {
 			t = createTeam(handle);
 		}
@@ -229,7 +326,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Team findTeam(String teamCode) {
-		Team t = teams.get(teamCode.toUpperCase());
+		Team t = teamIndex.get(teamCode);
 		return t;
 	}
 
@@ -261,7 +358,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	@Override
 	public Player createPlayer(String handle) throws InvalidPlayerException, InvalidTeamException {
 		String teamCode = teamCode(handle);
-		Team team = teams.get(teamCode.toUpperCase());
+		Team team = teamIndex.get(teamCode);
 		if (team == null) {
 			throw new InvalidTeamException("Unknown team: %s", teamCode);
 		}
@@ -275,13 +372,14 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Player createPlayer(String handle, Team team) throws InvalidPlayerException {
-		Player p = players.get(handle.toLowerCase());
+		Player p = playerIndex.get(handle);
 		if (p != null) {
 			throw new InvalidPlayerException("Player with the handle \"%s\" already exists", handle);
 		}
 		p = new Player(handle, team);
-		team.getPlayers().add(p);
+		team.addPlayer(p);
 		players.put(handle.toLowerCase(), p);
+		playerIndex.put(handle, p);
 		return p;
 	}
 
@@ -292,7 +390,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Team createTeam(String teamCode) throws InvalidTeamException {
-		Team t = teams.get(teamCode.toUpperCase());
+		Team t = teamIndex.get(teamCode);
 		if (t != null) {
 			throw new InvalidTeamException("Team with the handle \"%s\" already exists", teamCode);
 		}
@@ -301,6 +399,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 		}
 		t = new Team(teamCode);
 		teams.put(teamCode.toUpperCase(), t);
+		teamIndex.put(teamCode, t);
 		return t;
 	}
 
@@ -311,13 +410,17 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public boolean removePlayer(Player player) {
-		playerBoards.remove(player);
+		if (playerBoards.remove(player) != null) {
+			scheduledPlayers = null;
+		}
 		String key = player.getHandle().toLowerCase();
 		player = players.remove(key);
+		playerIndex.remove(key);
 		if (player == null)
 			return false;
+		setOnline(player, false);
 		Team team = player.getTeam();
-		team.getPlayers().remove(player);
+		team.removePlayer(player);
 		return true;
 	}
 
@@ -330,6 +433,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	public int removeTeam(Team team) {
 		String key = team.getTeamCode().toUpperCase();
 		team = teams.remove(key);
+		teamIndex.remove(key);
 		if (team == null)
 			return -1;
 		int count = 0;
@@ -348,6 +452,7 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public void updatePlayer(Player player) {
+		player.getTeam().ratingsChanged();
 	}
 
 	/**
@@ -369,9 +474,14 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	}
 
 	protected void reset() {
+		this.onlinePlayers.clear();
+		this.onlineSnapshot = null;
 		this.playerBoards.clear();
+		this.scheduledPlayers = null;
 		this.players.clear();
+		this.playerIndex.clear();
 		this.teams.clear();
+		this.teamIndex.clear();
 	}
 
 	public static String teamCode(String handle) throws InvalidPlayerException {
@@ -390,15 +500,33 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Set<Player> findOnlinePlayers() {
-		//TODO: Make this set dynamically updated
-		Set<Player> players = new LinkedHashSet<Player>();
-		for (Player p : this.players.values()) {
-			if (p.isOnline()) {
-				players.add(p);
-			}
+		Set<Player> set = onlineSnapshot;
+		if (set == null) {
+			set = Collections.unmodifiableSet(new TreeSet<Player>(onlinePlayers));
+			onlineSnapshot = set;
+		}
+		return set;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see org.chessworks.uscl.services.TournamentService#updatePlayerState(Player, PlayerState)
+	 */
+	@Override
+	public void updatePlayerState(Player player, PlayerState state) {
+		player.setState(state);
+		if (playerIndex.get(player.getHandle()) == player) {
+			setOnline(player, state.isOnline());
+		}
+	}
+
+	/** Adds or removes the player from the online players, dropping the copy handed out only if they change. */
+	private void setOnline(Player player, boolean online) {
+		boolean changed = online ? onlinePlayers.add(player) : onlinePlayers.remove(player);
+		if (changed) {
+			onlineSnapshot = null;
 		}
-		players = Collections.unmodifiableSet(players);
-		return players;
 	}
 
 	/**
@@ -408,10 +536,13 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
 	 */
 	@Override
 	public Collection<Player> findScheduledPlayers() {
-		Collection<Player> players = this.playerBoards.keySet();
-		List<Player> list = new ArrayList<Player>(players);
-		Collections.sort(list);
-		list = Collections.unmodifiableList(list);
+		List<Player> list = scheduledPlayers;
+		if (list == null) {
+			list = new ArrayList<Player>(this.playerBoards.keySet());
+			Collections.sort(list);
+			list = Collections.unmodifiableList(list);
+			scheduledPlayers = list;
+		}
 		return list;
 	}
 
@@ -423,6 +554,10 @@ public class SimpleTournamentService extends BasicLifecycle implements Tournamen
     @Override
     public void updateGameStatus(Game game, GameState status) {
         game.status = status;
+        /* A game's players change when a substitute plays, so the game may belong to a different match now. */
+        if (boards.get(game.boardNumber) == game) {
+            indexMatch(game);
+        }
     }
 
 }
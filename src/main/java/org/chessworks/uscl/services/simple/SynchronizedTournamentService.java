@@ -0,0 +1,176 @@
+package org.chessworks.uscl.services.simple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.chessworks.chess.model.PlayerState;
+import org.chessworks.uscl.model.Game;
+import org.chessworks.uscl.model.GameState;
+import org.chessworks.uscl.model.Player;
+import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.services.InvalidPlayerException;
+import org.chessworks.uscl.services.InvalidTeamException;
+import org.chessworks.uscl.services.TournamentService;
+
+/**
+ * Makes a {@link TournamentService} safe to use from several threads at once, by allowing only one call at a time. Collections are copied
+ * before they're returned, so callers may iterate them while other threads change the tournament. The online and scheduled players are the
+ * exception: {@link TournamentService#findOnlinePlayers()} and {@link TournamentService#findScheduledPlayers()} already return collections
+ * which never change, so they're shared rather than copied.
+ *
+ * The bot uses this since datagrams for different games are handled in parallel.
+ *
+ * @author Doug Bateman
+ */
+public class SynchronizedTournamentService extends DecoratingTournamentService {
+
+	public SynchronizedTournamentService(TournamentService service) {
+		super(service);
+	}
+
+	@Override
+	public synchronized Game cancelGame(Game game) {
+		return super.cancelGame(game);
+	}
+
+	@Override
+	public synchronized Game cancelGame(int board) {
+		return super.cancelGame(board);
+	}
+
+	@Override
+	public synchronized Game cancelGame(Player player) {
+		return super.cancelGame(player);
+	}
+
+	@Override
+	public synchronized void clearSchedule() {
+		super.clearSchedule();
+	}
+
+	@Override
+	public synchronized Player createPlayer(String handle) throws InvalidPlayerException, InvalidTeamException {
+		return super.createPlayer(handle);
+	}
+
+	@Override
+	public synchronized Player createPlayer(String handle, Team team) throws InvalidPlayerException {
+		return super.createPlayer(handle, team);
+	}
+
+	@Override
+	public synchronized Team createTeam(String teamCode) throws InvalidTeamException {
+		return super.createTeam(teamCode);
+	}
+
+	@Override
+	public synchronized Collection<Game> findAllGames() {
+		return copy(super.findAllGames());
+	}
+
+	@Override
+	public synchronized Collection<Player> findAllPlayers() {
+		return copy(super.findAllPlayers());
+	}
+
+	@Override
+	public synchronized Collection<Team> findAllTeams() {
+		return copy(super.findAllTeams());
+	}
+
+	@Override
+	public synchronized Game findGame(int gameNumber) {
+		return super.findGame(gameNumber);
+	}
+
+	@Override
+	public synchronized Collection<Game> findMatchGames(Team team1, Team team2) {
+		return copy(super.findMatchGames(team1, team2));
+	}
+
+	@Override
+	public synchronized Collection<Player> findOnlinePlayers() {
+		return super.findOnlinePlayers();
+	}
+
+	@Override
+	public synchronized Player findOrCreatePlayer(String handle) throws InvalidPlayerException, InvalidTeamException {
+		return super.findOrCreatePlayer(handle);
+	}
+
+	@Override
+	public synchronized Team findOrCreateTeam(String handle) throws InvalidTeamException {
+		return super.findOrCreateTeam(handle);
+	}
+
+	@Override
+	public synchronized Player findPlayer(String handle) {
+		return super.findPlayer(handle);
+	}
+
+	@Override
+	public synchronized Game findPlayerGame(Player player) {
+		return super.findPlayerGame(player);
+	}
+
+	@Override
+	public synchronized Collection<Player> findScheduledPlayers() {
+		return super.findScheduledPlayers();
+	}
+
+	@Override
+	public synchronized Team findTeam(String teamCode) {
+		return super.findTeam(teamCode);
+	}
+
+	@Override
+	public synchronized void flush() {
+		super.flush();
+	}
+
+	@Override
+	public synchronized boolean removePlayer(Player player) {
+		return super.removePlayer(player);
+	}
+
+	@Override
+	public synchronized int removeTeam(Team team) {
+		return super.removeTeam(team);
+	}
+
+	@Override
+	public synchronized Game scheduleGame(Game game) {
+		return super.scheduleGame(game);
+	}
+
+	@Override
+	public synchronized Game scheduleGame(int board, int event, Player white, Player black) {
+		return super.scheduleGame(board, event, white, black);
+	}
+
+	@Override
+	public synchronized void updateGameStatus(Game game, GameState status) {
+		super.updateGameStatus(game, status);
+	}
+
+	@Override
+	public synchronized void updatePlayer(Player player) {
+		super.updatePlayer(player);
+	}
+
+	@Override
+	public synchronized void updatePlayerState(Player player, PlayerState state) {
+		super.updatePlayerState(player, state);
+	}
+
+	@Override
+	public synchronized void updateTeam(Team team) {
+		super.updateTeam(team);
+	}
+
+	private static <T> Collection<T> copy(Collection<T> collection) {
+		return Collections.unmodifiableList(new ArrayList<T>(collection));
+	}
+
+}
@@ -0,0 +1,177 @@
+package org.chessworks.uscl.util;
+
+/**
+ * Maps handles to values, ignoring the case of the handles. Looking up a handle allocates nothing: the handle's hash and equality are
+ * computed by folding ASCII letters to lower case on the fly, rather than by building a lower case copy of the handle. Handles on the chess
+ * server are ASCII, so letters outside ASCII are compared exactly.
+ *
+ * The map uses open addressing with linear probing, and is not sorted. It is not thread-safe.
+ *
+ * @author Doug Bateman
+ */
+public class HandleMap<V> {
+
+    private String[] keys;
+
+    private Object[] values;
+
+    private int size = 0;
+
+    public HandleMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize
+     *            The number of handles the map should hold without resizing.
+     */
+    public HandleMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    /** Returns the value for the handle, in any case, or null if there is none. */
+    @SuppressWarnings("unchecked")
+    public V get(String handle) {
+        int i = indexOf(handle);
+        return (i < 0) ? null : (V) values[i];
+    }
+
+    /** Returns true if the map holds the handle, in any case. */
+    public boolean containsKey(String handle) {
+        return indexOf(handle) >= 0;
+    }
+
+    /**
+     * Maps the handle to the value, replacing any value for the handle in another case. The handle is kept in the case given.
+     *
+     * @return the previous value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(String handle, V value) {
+        int mask = keys.length - 1;
+        int i = hash(handle) & mask;
+        while (keys[i] != null) {
+            if (equalsIgnoreCase(keys[i], handle)) {
+                V old = (V) values[i];
+                keys[i] = handle;
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = handle;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the handle, in any case.
+     *
+     * @return the value removed, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(String handle) {
+        int i = indexOf(handle);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        int mask = keys.length - 1;
+        /* Shift the following entries back, so every entry stays reachable from its home slot without a tombstone. */
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != null) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    /** Returns the number of handles in the map. */
+    public int size() {
+        return size;
+    }
+
+    /** Removes all handles. */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    private int indexOf(String handle) {
+        int mask = keys.length - 1;
+        int i = hash(handle) & mask;
+        while (keys[i] != null) {
+            if (equalsIgnoreCase(keys[i], handle)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldKeys[k] != null) {
+                int i = hash(oldKeys[k]) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+
+    /** Folds an ASCII upper case letter to lower case. Other characters are unchanged. */
+    private static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /** Hashes the handle as if it were in lower case, spreading the bits so nearby handles don't cluster. */
+    private static int hash(String handle) {
+        int h = 0;
+        for (int i = 0; i < handle.length(); i++) {
+            h = 31 * h + fold(handle.charAt(i));
+        }
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (fold(a.charAt(i)) != fold(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.chessworks.uscl.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Estimates the number of distinct strings added to it, in a fixed, small amount of memory, using the HyperLogLog algorithm. With the
+ * default 1024 registers, the estimate is typically within 3% of the true count, whether a thousand or a million strings are added.
+ *
+ * Adding is lock-free, so strings may be added from several threads at once.
+ *
+ * @author Doug Bateman
+ */
+public class HyperLogLog {
+
+    /** The number of bits of the hash used to choose a register. */
+    private final int precision;
+
+    /** The registers. Each holds the longest run of leading zeros, plus one, seen in the hashes sent to it. */
+    private final AtomicIntegerArray registers;
+
+    /** Creates an estimator with 1024 registers. */
+    public HyperLogLog() {
+        this(10);
+    }
+
+    /**
+     * @param precision
+     *            The estimator uses 2^precision registers, from 16 to 65536. Each extra bit of precision doubles the memory used and
+     *            reduces the error by about 30%.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16.");
+        }
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+
+    /** Adds a string. Strings which differ only in case are counted as distinct. */
+    public void add(String s) {
+        addHash(hash(s, false));
+    }
+
+    /**
+     * Adds a string, such as a handle, ignoring its case. ASCII letters are folded to lower case as the string is hashed, so nothing is
+     * allocated. Letters outside ASCII are compared exactly.
+     */
+    public void addIgnoreCase(String s) {
+        addHash(hash(s, true));
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        int current = registers.get(index);
+        while (rank > current && !registers.compareAndSet(index, current, rank)) {
+            current = registers.get(index);
+        }
+    }
+
+    /** Returns the estimated number of distinct strings added. */
+    public long estimate() {
+        int m = registers.length();
+        double sum = 0;
+        int empty = 0;
+        for (int i = 0; i < m; i++) {
+            int r = registers.get(i);
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                empty++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && empty > 0) {
+            /* For small counts, linear counting of the empty registers is more accurate. */
+            estimate = m * Math.log((double) m / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /** Forgets all strings added. */
+    public void clear() {
+        for (int i = 0; i < registers.length(); i++) {
+            registers.set(i, 0);
+        }
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the string, with a final mix so all bits depend on every character. If ignoring case, the string is hashed
+     * as if its ASCII letters were in lower case.
+     */
+    private static long hash(String s, boolean ignoreCase) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (ignoreCase && c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h ^= c;
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+}
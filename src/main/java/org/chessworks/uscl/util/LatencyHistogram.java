@@ -0,0 +1,77 @@
+package org.chessworks.uscl.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies, in nanoseconds, in power-of-two buckets, so percentiles can be reported without keeping every sample. Recording is
+ * lock-free and never allocates, so it may be done from several threads at once on the datagram path.
+ *
+ * Percentiles are approximate: each is reported as the upper bound of the bucket it falls in, so within a factor of two.
+ *
+ * @author Doug Bateman
+ */
+public class LatencyHistogram {
+
+    /** Bucket i counts latencies below 2^i nanoseconds, but at least 2^(i-1). */
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /** Records one latency, in nanoseconds. */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /** Returns the number of latencies recorded. */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Returns the mean latency, in nanoseconds, or 0 if none were recorded. */
+    public long getMeanNanos() {
+        long n = count.get();
+        return (n == 0) ? 0 : totalNanos.get() / n;
+    }
+
+    /** Returns the highest latency recorded, in nanoseconds. */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the latency, in nanoseconds, below which the given fraction of latencies fall, or 0 if none were recorded.
+     *
+     * @param fraction
+     *            The percentile, as a fraction. For example, 0.99 for the 99th percentile.
+     */
+    public long getPercentileNanos(double fraction) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * fraction);
+        long seen = 0;
+        for (int i = 0; i < 64; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min((i == 0) ? 0 : (1L << i) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+}
@@ -0,0 +1,217 @@
+package org.chessworks.uscl.util;
+
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A precompiled {@link MessageFormat} pattern.
+ *
+ * The bot formats the same handful of constant patterns thousands of times per round. {@link MessageFormat#format(String, Object...)}
+ * re-parses the pattern on every call, so instead patterns are compiled once into a list of literal text and argument slots, cached, and
+ * then rendered into a reusable per-thread buffer.
+ *
+ * The output is identical to {@link MessageFormat}: <tt>''</tt> is a literal quote, text in single quotes is copied as-is, numbers and
+ * dates use the default locale's formats, and placeholders without a matching argument are left untouched. Patterns using format types,
+ * such as <tt>{0,number,#}</tt>, are handed to {@link MessageFormat} unchanged.
+ *
+ * @author Doug Bateman
+ */
+public final class MessageTemplate {
+
+    /** Limits the cache, in case a caller builds patterns on the fly rather than using constants. */
+    private static final int MAX_CACHED_TEMPLATES = 2048;
+
+    private static final ConcurrentMap<String, MessageTemplate> cache = new ConcurrentHashMap<String, MessageTemplate>();
+
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private static final ThreadLocal<NumberFormat> numberFormats = new ThreadLocal<NumberFormat>() {
+        @Override
+        protected NumberFormat initialValue() {
+            return NumberFormat.getInstance();
+        }
+    };
+
+    private static final ThreadLocal<DateFormat> dateFormats = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        }
+    };
+
+    private final String pattern;
+
+    /** The literal text preceding each argument slot, plus the trailing text. Has one more entry than {@link #argIndexes}. */
+    private final String[] literals;
+
+    /** The argument index of each slot. */
+    private final int[] argIndexes;
+
+    /** True if the pattern uses features this class doesn't handle, so formatting is left to {@link MessageFormat}. */
+    private final boolean delegate;
+
+    private MessageTemplate(String pattern, String[] literals, int[] argIndexes, boolean delegate) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.argIndexes = argIndexes;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the compiled form of the pattern, compiling it if it's not already cached.
+     */
+    public static MessageTemplate compile(String pattern) {
+        MessageTemplate template = cache.get(pattern);
+        if (template == null) {
+            template = parse(pattern);
+            if (cache.size() < MAX_CACHED_TEMPLATES) {
+                cache.putIfAbsent(pattern, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * A drop-in replacement for {@link MessageFormat#format(String, Object...)}.
+     */
+    public static String format(String pattern, Object... args) {
+        return compile(pattern).render(args);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Renders the template with the given arguments.
+     */
+    public String render(Object... args) {
+        if (delegate) {
+            return MessageFormat.format(pattern, args);
+        }
+        if (argIndexes.length == 0) {
+            return literals[0];
+        }
+        StringBuilder buf = buffers.get();
+        buf.setLength(0);
+        renderTo(buf, args);
+        return buf.toString();
+    }
+
+    /**
+     * Renders the template with the given arguments, appending the result to the buffer.
+     */
+    public void renderTo(StringBuilder buf, Object... args) {
+        if (delegate) {
+            buf.append(MessageFormat.format(pattern, args));
+            return;
+        }
+        for (int i = 0; i < argIndexes.length; i++) {
+            buf.append(literals[i]);
+            int index = argIndexes[i];
+            if (args == null || index >= args.length) {
+                buf.append('{').append(index).append('}');
+            } else {
+                appendArg(buf, args[index]);
+            }
+        }
+        buf.append(literals[argIndexes.length]);
+    }
+
+    private static void appendArg(StringBuilder buf, Object arg) {
+        if (arg == null) {
+            buf.append("null");
+        } else if (arg instanceof String) {
+            buf.append((String) arg);
+        } else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+            long value = ((Number) arg).longValue();
+            if (value > -1000 && value < 1000) {
+                /* No grouping separators needed. */
+                buf.append(value);
+            } else {
+                buf.append(numberFormats.get().format(value));
+            }
+        } else if (arg instanceof Number) {
+            buf.append(numberFormats.get().format(arg));
+        } else if (arg instanceof Date) {
+            buf.append(dateFormats.get().format(arg));
+        } else {
+            buf.append(arg.toString());
+        }
+    }
+
+    private static MessageTemplate parse(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> argIndexes = new ArrayList<Integer>();
+        StringBuilder text = new StringBuilder();
+        boolean quoted = false;
+        int len = pattern.length();
+        for (int i = 0; i < len; i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '\'') {
+                if (i + 1 < len && pattern.charAt(i + 1) == '\'') {
+                    text.append('\'');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (quoted || ch != '{') {
+                text.append(ch);
+            } else {
+                int close = pattern.indexOf('}', i);
+                int index = (close < 0) ? -1 : parseIndex(pattern, i + 1, close);
+                if (index < 0) {
+                    /* Format types, nested braces, or a malformed pattern. Let MessageFormat decide. */
+                    return new MessageTemplate(pattern, null, null, true);
+                }
+                literals.add(text.toString());
+                text.setLength(0);
+                argIndexes.add(index);
+                i = close;
+            }
+        }
+        literals.add(text.toString());
+        int[] indexes = new int[argIndexes.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = argIndexes.get(i);
+        }
+        return new MessageTemplate(pattern, literals.toArray(new String[literals.size()]), indexes, false);
+    }
+
+    /**
+     * Parses a plain argument index.
+     *
+     * @return the index, or -1 if the text is anything else.
+     */
+    private static int parseIndex(String pattern, int start, int end) {
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char ch = pattern.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            index = index * 10 + (ch - '0');
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.chessworks.uscl.util;
+
+/**
+ * Counts events within a sliding window of time, such as "task switches in the last 10 minutes".
+ *
+ * The window is divided into a fixed number of buckets, kept in a ring. Each bucket counts the events in one slice of time, and is reused
+ * once its slice falls out of the window. Counting an event never allocates, and memory use doesn't grow with the number of events.
+ *
+ * @author Doug Bateman
+ */
+public class SlidingWindowCounter {
+
+    private final long bucketMillis;
+
+    private final int[] counts;
+
+    /** The slice of time counted by each bucket: the time divided by bucketMillis. */
+    private final long[] slices;
+
+    /**
+     * @param windowMillis
+     *            The length of the window, in milliseconds.
+     * @param buckets
+     *            The number of buckets the window is divided into. More buckets give a smoother window.
+     */
+    public SlidingWindowCounter(long windowMillis, int buckets) {
+        if (buckets < 1 || windowMillis < buckets) {
+            throw new IllegalArgumentException("The window must be at least one millisecond per bucket.");
+        }
+        this.bucketMillis = windowMillis / buckets;
+        this.counts = new int[buckets];
+        this.slices = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            slices[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /** Counts an event at the given time, in milliseconds. */
+    public synchronized void increment(long now) {
+        long slice = now / bucketMillis;
+        int i = (int) (slice % counts.length);
+        if (slices[i] != slice) {
+            slices[i] = slice;
+            counts[i] = 0;
+        }
+        counts[i]++;
+    }
+
+    /** Returns the number of events counted within the window ending at the given time, in milliseconds. */
+    public synchronized int count(long now) {
+        long slice = now / bucketMillis;
+        int total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            long age = slice - slices[i];
+            if (age >= 0 && age < counts.length) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+}
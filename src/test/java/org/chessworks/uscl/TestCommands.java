@@ -0,0 +1,229 @@
+package org.chessworks.uscl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.chessworks.uscl.model.Player;
+import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.outbound.OutboundQueue;
+import org.chessworks.uscl.outbound.Priority;
+import org.chessworks.uscl.outbound.TokenBucket;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCommands {
+
+    private final USCLBot bot = new USCLBot();
+
+    private final List<List<String>> sent = new ArrayList<List<String>>();
+
+    /** When the datagram each unit responds to was received. */
+    private final List<Long> received = new ArrayList<Long>();
+
+    private final USCLBot.Commands commands = bot.new Commands() {
+
+        @Override
+        protected void send(Priority priority, List<String> unit) {
+            sent.add(unit);
+            received.add(getReceived());
+        }
+    };
+
+    public TestCommands() {
+        bot.setAdminPass("secret");
+    }
+
+    @Test
+    public void testAdminCommandIsBracketed() {
+        commands.sendAdminCommand("+kmuzzle {0}", "Shirov-NYC");
+        Assert.assertEquals("[[admin secret, +kmuzzle Shirov-NYC, admin]]", sent.toString());
+    }
+
+    @Test
+    public void testConsecutiveAdminCommandsShareOneBracket() {
+        commands.beginAdminSession();
+        commands.sendAdminCommand("+kmuzzle Shirov-NYC");
+        commands.sendAdminCommand("+kmuzzle Kasparov-NYC");
+        Assert.assertTrue(sent.isEmpty());
+        commands.endAdminSession();
+        Assert.assertEquals("[[admin secret, +kmuzzle Shirov-NYC, +kmuzzle Kasparov-NYC, admin]]", sent.toString());
+    }
+
+    @Test
+    public void testTellClosesAdminBracket() {
+        commands.beginAdminSession();
+        commands.sendAdminCommand("+kmuzzle Shirov-NYC");
+        commands.tell("Shirov-NYC", "Your game is about to start.");
+        Assert.assertEquals("[[admin secret, +kmuzzle Shirov-NYC, admin], [tell Shirov-NYC Your game is about to start.]]", sent.toString());
+        commands.sendAdminCommand("+kmuzzle Kasparov-NYC");
+        commands.endAdminSession();
+        Assert.assertEquals(3, sent.size());
+        Assert.assertEquals("[admin secret, +kmuzzle Kasparov-NYC, admin]", sent.get(2).toString());
+    }
+
+    @Test
+    public void testSpoofsOfOneHandleArePacked() {
+        commands.beginAdminSession();
+        commands.spoof("Shirov-NYC", "set kib 0");
+        commands.spoof("Shirov-NYC", "set busy 2");
+        commands.spoof("jimmys", "qset Shirov-NYC isolated 1");
+        commands.spoof("Shirov-NYC", "tell 1 hi; there");
+        commands.endAdminSession();
+        Assert.assertEquals("[[admin secret, spoof Shirov-NYC ;set kib 0; set busy 2, spoof jimmys qset Shirov-NYC isolated 1, "
+                + "spoof Shirov-NYC tell 1 hi; there, admin]]", sent.toString());
+    }
+
+    @Test
+    public void testLongPackIsSplit() {
+        List<String> spoofs = new ArrayList<String>();
+        commands.beginAdminSession();
+        for (int i = 0; i < 200; i++) {
+            String command = "set-other Kasparov-NYC note " + i;
+            spoofs.add("spoof Shirov-NYC " + command);
+            commands.spoof("Shirov-NYC", command);
+        }
+        commands.endAdminSession();
+        List<String> lines = lines();
+        Assert.assertTrue(lines.size() > 1);
+        Assert.assertTrue(lines.size() < spoofs.size() / 10);
+        for (String line : lines) {
+            Assert.assertTrue(line.length() <= USCLBot.MAX_COMMAND_LENGTH);
+        }
+        Assert.assertEquals(spoofs, unpack(lines));
+    }
+
+    @Test
+    public void testSetupBoardSendsTheOldSpoofs() {
+        Team team = new Team("NYC");
+        Player white = new Player("Shirov-NYC", team);
+        Player black = new Player("Kasparov-NYC", team);
+        commands.beginAdminSession();
+        bot.setupBoard(commands, 170, 5, white, black, new StringBuffer("45 5"));
+        commands.endAdminSession();
+        List<String> lines = lines();
+        /* The sequence sent one spoof at a time before spoofs were packed. */
+        List<String> old = new ArrayList<String>();
+        old.add("reserve-game Shirov-NYC 5");
+        old.add("reserve-game Kasparov-NYC 5");
+        old.add("spoof Shirov-NYC set open 1");
+        old.add("spoof Kasparov-NYC set open 1");
+        old.add("spoof Shirov-NYC match Kasparov-NYC u w0 white 45 5");
+        old.add("spoof Kasparov-NYC accept Shirov-NYC");
+        old.add("spoof jimmys qset Shirov-NYC isolated 1");
+        old.add("spoof jimmys qset Kasparov-NYC isolated 1");
+        for (String setting : new String[] { "examine 1", "kib 0", "allowkib 0", "quietplay 2", "busy 2" }) {
+            old.add("spoof Shirov-NYC set " + setting);
+            old.add("spoof Kasparov-NYC set " + setting);
+        }
+        old.add("observe 5");
+        old.add("spoof roboadmin observe 5");
+        List<String> unpacked = unpack(lines);
+        /* The event listing isn't a spoof. */
+        Assert.assertTrue(unpacked.remove(unpacked.size() - 1).startsWith("qaddevent 170 "));
+        List<String> sortedOld = new ArrayList<String>(old);
+        List<String> sortedNew = new ArrayList<String>(unpacked);
+        Collections.sort(sortedOld);
+        Collections.sort(sortedNew);
+        Assert.assertEquals(sortedOld, sortedNew);
+        for (String handle : new String[] { "Shirov-NYC", "Kasparov-NYC", "jimmys", "roboadmin" }) {
+            Assert.assertEquals(spoofsOf(handle, old), spoofsOf(handle, unpacked));
+        }
+        int challenge = unpacked.indexOf("spoof Shirov-NYC match Kasparov-NYC u w0 white 45 5");
+        Assert.assertTrue(unpacked.indexOf("spoof Kasparov-NYC set open 1") < challenge);
+        Assert.assertTrue(unpacked.indexOf("spoof jimmys qset Shirov-NYC isolated 1") < unpacked.indexOf("spoof Shirov-NYC set examine 1"));
+        /* Sixteen spoofs of the players and jimmys fit in six lines. */
+        int spoofLines = 0;
+        for (String line : lines) {
+            if (line.startsWith("spoof ") && !line.startsWith("spoof roboadmin")) {
+                spoofLines++;
+            }
+        }
+        Assert.assertEquals(6, spoofLines);
+    }
+
+    @Test
+    public void testTellOutsideAdminModeIsSentAtOnce() {
+        commands.beginAdminSession();
+        commands.tell("Shirov-NYC", "Hello");
+        Assert.assertEquals("[[tell Shirov-NYC Hello]]", sent.toString());
+        commands.endAdminSession();
+        Assert.assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testUnitsCarryTheDatagramReceiveTime() {
+        commands.tell("Shirov-NYC", "Hello");
+        long old = commands.setReceived(42);
+        commands.beginAdminSession();
+        commands.sendAdminCommand("+kmuzzle Shirov-NYC");
+        commands.endAdminSession();
+        commands.setReceived(old);
+        commands.tell("Shirov-NYC", "Bye");
+        Assert.assertEquals(Arrays.asList(OutboundQueue.NO_DATAGRAM, 42L, OutboundQueue.NO_DATAGRAM), received);
+    }
+
+    @Test
+    public void testDroppedSettingsAreSentAgain() {
+        /* The queue isn't started, so the bulk lane stays full after one unit. */
+        OutboundQueue queue = new OutboundQueue(null, new TokenBucket(1, 1), 1);
+        bot.setOutboundQueue(queue);
+        USCLBot.Commands live = bot.new LiveCommands();
+        live.setPriority(Priority.BULK);
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            live.beginAdminSession();
+            live.spoof("Shirov-NYC", "set kib 0");
+            live.leaveAdminMode();
+            live.spoof("Kasparov-NYC", "set kib 0");
+            live.spoof("Kasparov-NYC", "set busy 2");
+            live.leaveAdminMode();
+            live.sendAdminCommand("qset Kasparov-NYC isolated 1");
+            live.endAdminSession();
+            /* Shirov's setting was queued, so it isn't repeated. Kasparov's were dropped, so they're sent, and dropped, again. */
+            Assert.assertEquals(1, queue.getQueuedUnits(Priority.BULK));
+            Assert.assertEquals(2 * attempt, queue.getDroppedUnits(Priority.BULK));
+        }
+    }
+
+    /** Returns the commands sent, without the admin on/off toggles. */
+    private List<String> lines() {
+        List<String> lines = new ArrayList<String>();
+        for (List<String> unit : sent) {
+            for (String command : unit) {
+                if (!command.equals("admin") && !command.startsWith("admin ")) {
+                    lines.add(command);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /** Splits each packed spoof back into the spoofs it was packed from. */
+    private static List<String> unpack(List<String> lines) {
+        List<String> unpacked = new ArrayList<String>();
+        for (String line : lines) {
+            int space = line.indexOf(' ', "spoof ".length());
+            if (line.startsWith("spoof ") && line.charAt(space + 1) == ';') {
+                String prefix = line.substring(0, space + 1);
+                for (String command : line.substring(space + 2).split("; ")) {
+                    unpacked.add(prefix + command);
+                }
+            } else {
+                unpacked.add(line);
+            }
+        }
+        return unpacked;
+    }
+
+    private static List<String> spoofsOf(String handle, List<String> commands) {
+        List<String> spoofs = new ArrayList<String>();
+        for (String command : commands) {
+            if (command.startsWith("spoof " + handle + " ")) {
+                spoofs.add(command);
+            }
+        }
+        return spoofs;
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.chessworks.uscl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.chessworks.uscl.outbound.Priority;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestQEventPublisher {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+    private final USCLBot.Commands commands = new USCLBot().new Commands() {
+
+        @Override
+        protected void send(Priority priority, List<String> unit) {
+            for (String command : unit) {
+                if (!command.equals("admin") && !command.startsWith("admin ")) {
+                    sent.add(command);
+                }
+            }
+        }
+    };
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TestQEventPublisher");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Holds changes until flushed by hand. */
+    private final QEventPublisher publisher = new QEventPublisher(commands, scheduler, 60000);
+
+    private static QEvent live(int slot, String white, String black) {
+        return QEvent.event(slot).description("%-4s %s - %s", "LIVE", white, black).addWatchCommand("observe %d", slot - 169);
+    }
+
+    @Test
+    public void testOnlyTheLatestChangeIsSent() {
+        publisher.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        publisher.publish(live(170, "Kasparov-NYC", "Shirov-NYC"));
+        Assert.assertTrue(sent.isEmpty());
+        publisher.flush();
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(live(170, "Kasparov-NYC", "Shirov-NYC").toString(), sent.get(0));
+        Assert.assertEquals(live(170, "Kasparov-NYC", "Shirov-NYC").toString(), publisher.getPublished(170).toString());
+    }
+
+    @Test
+    public void testUnchangedEventIsSkipped() {
+        publisher.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        publisher.flush();
+        publisher.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        publisher.flush();
+        Assert.assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testRemove() {
+        publisher.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        publisher.flush();
+        publisher.remove(170);
+        publisher.flush();
+        Assert.assertEquals("qremoveevent 170", sent.get(1));
+        Assert.assertNull(publisher.getPublished(170));
+        publisher.remove(170);
+        publisher.flush();
+        Assert.assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testChangesAreSentWhenTheDebounceEnds() throws InterruptedException {
+        QEventPublisher quick = new QEventPublisher(commands, scheduler, 20);
+        quick.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        quick.publish(live(171, "Carlsen-NYC", "Anand-NYC"));
+        for (int i = 0; i < 500 && sent.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, sent.size());
+        Assert.assertEquals(live(170, "Shirov-NYC", "Kasparov-NYC").toString(), sent.get(0));
+    }
+
+    @Test
+    public void testReconcileSendsEverySlot() {
+        publisher.publish(live(170, "Shirov-NYC", "Kasparov-NYC"));
+        publisher.publish(live(171, "Carlsen-NYC", "Anand-NYC"));
+        publisher.flush();
+        sent.clear();
+        Map<Integer, QEvent> events = new HashMap<Integer, QEvent>();
+        events.put(170, live(170, "Shirov-NYC", "Kasparov-NYC"));
+        events.put(172, live(172, "Nakamura-STL", "Caruana-STL"));
+        Assert.assertEquals(2, publisher.reconcile(events, 170, 172));
+        /* The server's list isn't trusted, so even the unchanged slot is sent again. */
+        Assert.assertEquals(3, sent.size());
+        Assert.assertEquals(live(170, "Shirov-NYC", "Kasparov-NYC").toString(), sent.get(0));
+        Assert.assertEquals("qremoveevent 171", sent.get(1));
+        Assert.assertEquals(live(172, "Nakamura-STL", "Caruana-STL").toString(), sent.get(2));
+        Assert.assertNull(publisher.getPublished(171));
+    }
+
+}
@@ -0,0 +1,178 @@
+package org.chessworks.uscl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+import org.chessworks.chess.model.Role;
+import org.chessworks.chessclub.ChatType;
+import org.chessworks.uscl.inbound.DatagramDispatcher;
+import org.chessworks.uscl.model.Game;
+import org.chessworks.uscl.model.GameState;
+import org.chessworks.uscl.model.Player;
+import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.services.simple.SimpleTournamentService;
+import org.chessworks.uscl.util.MessageTemplate;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTaskSwitchTracker {
+
+    private final List<String> tells = Collections.synchronizedList(new ArrayList<String>());
+
+    private final USCLBot bot = new USCLBot() {
+
+        @Override
+        public void broadcast(ChatType tellType, Role role, String msg, Object... args) {
+            tells.add(MessageTemplate.format(msg, args));
+        }
+    };
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TestTaskSwitchTracker");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final SimpleTournamentService service = new SimpleTournamentService();
+
+    private final TaskSwitchTracker tracker = new TaskSwitchTracker();
+
+    private final Game game;
+
+    public TestTaskSwitchTracker() throws Exception {
+        Team team = new Team("NYC");
+        game = service.scheduleGame(new Game(5, 174, new Player("Shirov-NYC", team), new Player("Kasparov-NYC", team)));
+        game.status = GameState.PLAYING;
+        tracker.setUSCLBot(bot);
+        tracker.setTournamentService(service);
+        tracker.setDatagramDispatcher(new DatagramDispatcher(null));
+        tracker.setScheduler(scheduler);
+        /* Digests are sent by hand. */
+        tracker.setDigestSeconds(3600);
+        tracker.start();
+    }
+
+    @Test
+    public void testPatternsMatchInTheSameCase() {
+        Assert.assertTrue(tracker.isFairPlayMessage("Shirov-NYC has lost focus (1)"));
+        Assert.assertFalse(tracker.isFairPlayMessage("Shirov-NYC has lost FOCUS (1)"));
+        Assert.assertFalse(tracker.isFairPlayMessage("Shirov-NYC refocused"));
+    }
+
+    @Test
+    public void testAnyPatternMatches() {
+        Pattern compiled = TaskSwitchTracker.compile(new String[] { " focus ", "", "switched (" });
+        Assert.assertTrue(compiled.matcher("Kasparov-NYC switched (2)").find());
+        Assert.assertTrue(compiled.matcher("Kasparov-NYC lost focus (2)").find());
+        Assert.assertFalse(compiled.matcher("Kasparov-NYC switched").find());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAtLeastOnePatternIsRequired() {
+        TaskSwitchTracker.compile(new String[] { "" });
+    }
+
+    @Test
+    public void testNoDigestWithoutEvents() {
+        tracker.processGameMessage(5, "Shirov-NYC moves forward");
+        tracker.processGameMessage(6, "Shirov-NYC lost focus (1)");
+        tracker.sendDigest();
+        Assert.assertTrue(tells.isEmpty());
+    }
+
+    @Test
+    public void testEventsOfGamesNotPlayingAreIgnored() {
+        game.status = GameState.ADJOURNED;
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (1)");
+        tracker.sendDigest();
+        Assert.assertTrue(tells.isEmpty());
+    }
+
+    @Test
+    public void testEventsAreTotalledPerPlayerAndPerGame() {
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (1)");
+        tracker.processGameMessage(5, "shirov-nyc lost focus (2)");
+        tracker.processGameMessage(5, "Game 5: Kasparov-NYC lost focus (1)");
+        tracker.processGameMessage(5, "Someone lost focus (1)");
+        tracker.sendDigest();
+        Assert.assertEquals(1, tells.size());
+        String digest = tells.get(0);
+        Assert.assertTrue(digest, digest.contains("Shirov-NYC 2 (2 in 10 min)"));
+        Assert.assertTrue(digest, digest.contains("Kasparov-NYC 1 (1 in 10 min)"));
+        Assert.assertTrue(digest, digest.contains("1 unattributed, 4 on the board in 10 min."));
+        Assert.assertTrue(digest, digest.endsWith("Last: Someone lost focus (1)."));
+    }
+
+    @Test
+    public void testWindowTotalsOutliveTheDigest() {
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (1)");
+        tracker.sendDigest();
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (2)");
+        tracker.sendDigest();
+        Assert.assertEquals(2, tells.size());
+        Assert.assertTrue(tells.get(1), tells.get(1).contains("Shirov-NYC 1 (2 in 10 min), 2 on the board in 10 min."));
+        Assert.assertFalse(tells.get(1), tells.get(1).contains("Kasparov-NYC"));
+    }
+
+    @Test
+    public void testEventsStayWithThePlayerWhenColoursSwap() {
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (1)");
+        Player white = game.whitePlayer;
+        game.whitePlayer = game.blackPlayer;
+        game.blackPlayer = white;
+        tracker.processGameMessage(5, "Shirov-NYC lost focus (2)");
+        tracker.sendDigest();
+        Assert.assertEquals(1, tells.size());
+        Assert.assertTrue(tells.get(0), tells.get(0).contains("Shirov-NYC 2 (2 in 10 min), 2 on the board in 10 min."));
+    }
+
+    @Test
+    public void testSubstituteBeforeTheDigest() {
+        tracker.processGameMessage(5, "Kasparov-NYC lost focus (1)");
+        game.blackPlayer = new Player("Carlsen-NYC", game.whitePlayer.getTeam());
+        tracker.processGameMessage(5, "Carlsen-NYC lost focus (1)");
+        tracker.sendDigest();
+        Assert.assertEquals(1, tells.size());
+        Assert.assertTrue(tells.get(0), tells.get(0).contains("Kasparov-NYC 1 (1 in 10 min), Carlsen-NYC 1 (1 in 10 min)"));
+        /* The window totals are still there for the next digest. */
+        tracker.processGameMessage(5, "Carlsen-NYC lost focus (2)");
+        tracker.sendDigest();
+        Assert.assertTrue(tells.get(1), tells.get(1).contains("Carlsen-NYC 1 (2 in 10 min)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowMustBePositive() {
+        new TaskSwitchTracker().setWindowMinutes(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDigestPeriodMustBePositive() {
+        new TaskSwitchTracker().setDigestSeconds(-30);
+    }
+
+    @Test
+    public void testLongDigestIsCutShort() {
+        Team team = new Team("LAX");
+        for (int board = 10; board < 40; board++) {
+            Game other = service.scheduleGame(new Game(board, 170 + board, new Player("White" + board + "-LAX", team), new Player("Black"
+                    + board + "-LAX", team)));
+            other.status = GameState.PLAYING;
+            tracker.processGameMessage(board, "White" + board + "-LAX lost focus (1)");
+        }
+        tracker.sendDigest();
+        String digest = tells.get(0);
+        Assert.assertTrue(digest, digest.contains(" more games."));
+        Assert.assertTrue(digest, digest.length() < 1000);
+        Assert.assertTrue(digest, digest.contains("White10-LAX"));
+    }
+
+}
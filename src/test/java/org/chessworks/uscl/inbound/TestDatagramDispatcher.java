@@ -0,0 +1,119 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import free.chessclub.level2.Datagram;
+
+public class TestDatagramDispatcher {
+
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+    private final DatagramDispatcher dispatcher = new DatagramDispatcher(null);
+
+    private DatagramHandler record(final String name) {
+        return new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                handled.add(name + ":" + datagram.getId());
+            }
+        };
+    }
+
+    @Test
+    public void testHandlersRunInRegistrationOrder() {
+        dispatcher.register(Datagram.DG_PERSONAL_TELL, "first", record("first"));
+        dispatcher.register(Datagram.DG_PERSONAL_TELL, "second", record("second"));
+        dispatcher.register(Datagram.DG_NOTIFY_ARRIVED, "arrived", record("arrived"));
+        dispatcher.dispatch(Datagram.parseDatagram("31 Shirov-NYC {} {hello} 1"));
+        dispatcher.dispatch(Datagram.parseDatagram("64 Shirov-NYC"));
+        Assert.assertEquals("[first:31, second:31, arrived:64]", handled.toString());
+    }
+
+    @Test
+    public void testUnregisteredDatagramsAreIgnored() {
+        dispatcher.register(Datagram.DG_SEND_MOVES, "sendMoves", record("sendMoves"));
+        dispatcher.dispatch(Datagram.parseDatagram("31 Shirov-NYC {} {hello} 1"));
+        dispatcher.dispatch(Datagram.parseDatagram("500 whatever"));
+        Assert.assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    public void testStatisticsAreRecorded() {
+        dispatcher.register(Datagram.DG_NOTIFY_LEFT, "left", record("left"));
+        dispatcher.register(Datagram.DG_NOTIFY_ARRIVED, "arrived", record("arrived"));
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(Datagram.parseDatagram("64 Shirov-NYC"));
+        }
+        List<DatagramDispatcher.Registration> registrations = dispatcher.getRegistrations();
+        Assert.assertEquals(2, registrations.size());
+        /* Ordered by datagram id. */
+        DatagramDispatcher.Registration arrived = registrations.get(0);
+        Assert.assertEquals("arrived", arrived.getName());
+        Assert.assertEquals(Datagram.DG_NOTIFY_ARRIVED, arrived.getDatagramId());
+        Assert.assertEquals(3, arrived.getCount());
+        Assert.assertTrue(arrived.getMaxNanos() <= arrived.getTotalNanos());
+        Assert.assertEquals(0, registrations.get(1).getCount());
+    }
+
+    @Test
+    public void testStatisticsCountFailedHandlers() {
+        dispatcher.register(Datagram.DG_NOTIFY_ARRIVED, "broken", new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                throw new IllegalStateException("Thrown on purpose by the test.");
+            }
+        });
+        try {
+            dispatcher.dispatch(Datagram.parseDatagram("64 Shirov-NYC"));
+            Assert.fail("Expected the handler's exception.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        Assert.assertEquals(1, dispatcher.getRegistrations().get(0).getCount());
+    }
+
+    @Test
+    public void testRegisteringWhileDispatching() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        final DatagramHandler counter = new DatagramHandler() {
+
+            @Override
+            public void handle(Datagram datagram) {
+                count.incrementAndGet();
+            }
+        };
+        dispatcher.register(Datagram.DG_SEND_MOVES, "sendMoves", counter);
+        final Datagram move = Datagram.parseDatagram("24 77 e2e4");
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int t = 0; t < 2; t++) {
+            new Thread() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        dispatcher.dispatch(move);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        for (int id = 100; id < 150; id++) {
+            dispatcher.register(id, "extra" + id, counter);
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        /* Registering other datagrams, and growing the table, never loses the existing handler. */
+        Assert.assertEquals(20000, count.get());
+        Assert.assertEquals(51, dispatcher.getRegistrations().size());
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.chessworks.uscl.inbound;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import free.chessclub.level2.Datagram;
+
+public class TestDatagramReplayer {
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        File file = File.createTempFile("datagrams", ".bin");
+        file.deleteOnExit();
+        DatagramRecorder recorder = new DatagramRecorder(file);
+        recorder.record(Datagram.parseDatagram("31 Shirov-NYC {} {hello there} 1"));
+        recorder.markLoginComplete();
+        recorder.record(Datagram.parseDatagram("24 77 \u0019{e2e4 {odd}\u0019}"));
+        recorder.close();
+
+        final List<Datagram> received = new ArrayList<Datagram>();
+        DatagramDispatcher dispatcher = new DatagramDispatcher(null) {
+
+            @Override
+            public void receive(Datagram datagram) {
+                received.add(datagram);
+            }
+        };
+        final int[] loginCompleteAt = { -1 };
+        Runnable loginComplete = new Runnable() {
+
+            @Override
+            public void run() {
+                loginCompleteAt[0] = received.size();
+            }
+        };
+        DatagramReplayer replayer = new DatagramReplayer(file, false);
+        Assert.assertEquals(2, replayer.replay(dispatcher, loginComplete));
+        Assert.assertEquals(1, loginCompleteAt[0]);
+
+        Datagram tell = received.get(0);
+        Assert.assertEquals(31, tell.getId());
+        Assert.assertEquals(4, tell.getFieldCount());
+        Assert.assertEquals("Shirov-NYC", tell.getString(0));
+        Assert.assertEquals("", tell.getString(1));
+        Assert.assertEquals("hello there", tell.getString(2));
+        Assert.assertEquals(1, tell.getInteger(3));
+
+        Datagram move = received.get(1);
+        Assert.assertEquals(24, move.getId());
+        Assert.assertEquals(77, move.getInteger(0));
+        Assert.assertEquals("e2e4 {odd}", move.getString(1));
+    }
+
+}
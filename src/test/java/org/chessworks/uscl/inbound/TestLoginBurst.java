@@ -0,0 +1,52 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import free.chessclub.level2.Datagram;
+
+public class TestLoginBurst {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoginBurst burst = new LoginBurst(0, 750, 15000);
+
+    @Test
+    public void testQuietOnceTheGapPasses() {
+        burst.received(Datagram.DG_NOTIFY_STATE, 100 * MS);
+        Assert.assertEquals(LoginBurst.State.BUSY, burst.check(800 * MS, 0, true));
+        Assert.assertEquals(LoginBurst.State.QUIET, burst.check(850 * MS, 0, true));
+    }
+
+    @Test
+    public void testWritesAndQueuedCommandsKeepTheBurstGoing() {
+        Assert.assertEquals(LoginBurst.State.BUSY, burst.check(1000 * MS, 500 * MS, true));
+        Assert.assertEquals(LoginBurst.State.BUSY, burst.check(2000 * MS, 500 * MS, false));
+        Assert.assertEquals(LoginBurst.State.QUIET, burst.check(2000 * MS, 500 * MS, true));
+    }
+
+    @Test
+    public void testRoundTrafficDoesNotKeepTheBurstGoing() {
+        burst.received(Datagram.DG_MOVE_LIST, 100 * MS);
+        /* A reconnect mid-round: moves, observers and tells never stop arriving. */
+        for (long t = 200; t < 1000; t += 50) {
+            burst.received(Datagram.DG_SEND_MOVES, t * MS);
+            burst.received(Datagram.DG_PLAYERS_IN_MY_GAME, t * MS);
+            burst.received(Datagram.DG_PERSONAL_TELL, t * MS);
+        }
+        Assert.assertEquals(LoginBurst.State.QUIET, burst.check(1000 * MS, 0, true));
+    }
+
+    @Test
+    public void testExpiresIfNeverQuiet() {
+        for (long t = 0; t < 16000; t += 100) {
+            burst.received(Datagram.DG_NOTIFY_ARRIVED, t * MS);
+        }
+        Assert.assertEquals(LoginBurst.State.BUSY, burst.check(14999 * MS, 0, true));
+        Assert.assertEquals(LoginBurst.State.EXPIRED, burst.check(16000 * MS, 0, true));
+        Assert.assertEquals(16000, burst.getElapsedMillis(16000 * MS));
+    }
+
+}
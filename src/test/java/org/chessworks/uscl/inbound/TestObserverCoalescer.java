@@ -0,0 +1,91 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.chessworks.uscl.model.ObserverStats;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestObserverCoalescer {
+
+    private final StripedExecutor stripes = new StripedExecutor(2, "test");
+
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+
+    private final ObserverStats[] games = { new ObserverStats(), new ObserverStats() };
+
+    private final ObserverCoalescer.Target target = new ObserverCoalescer.Target() {
+
+        @Override
+        public void apply(int gameNumber, ObserverStats.Batch batch) {
+            games[gameNumber].apply(batch);
+            applied.add(gameNumber + ":" + batch.size());
+        }
+    };
+
+    @Test
+    public void testFlushAll() throws InterruptedException {
+        ObserverCoalescer coalescer = new ObserverCoalescer(stripes, target, 100);
+        coalescer.add(0, "a", true);
+        coalescer.add(0, "b", true);
+        coalescer.add(0, "a", false);
+        coalescer.add(1, "c", true);
+        Assert.assertEquals(4, coalescer.getPending());
+        coalescer.flushAll();
+        awaitStripes();
+        Assert.assertEquals(0, coalescer.getPending());
+        Assert.assertEquals(4, coalescer.getCoalesced());
+        Assert.assertEquals(2, coalescer.getBatches());
+        Assert.assertEquals(1, games[0].getCurrent());
+        Assert.assertEquals(2, games[0].getPeak());
+        Assert.assertEquals(1, games[1].getCurrent());
+    }
+
+    @Test
+    public void testFlushRunsBeforeLaterTasks() throws InterruptedException {
+        ObserverCoalescer coalescer = new ObserverCoalescer(stripes, target, 100);
+        coalescer.add(1, "a", true);
+        coalescer.add(0, "b", true);
+        coalescer.flush(1);
+        stripes.execute(1, new Runnable() {
+
+            @Override
+            public void run() {
+                applied.add("result:" + games[1].getCurrent());
+            }
+        });
+        awaitStripes();
+        Assert.assertEquals("[1:1, result:1]", applied.toString());
+        Assert.assertEquals(1, coalescer.getPending());
+    }
+
+    @Test
+    public void testCapacityFlushesBusiestGame() throws InterruptedException {
+        ObserverCoalescer coalescer = new ObserverCoalescer(stripes, target, 4);
+        coalescer.add(1, "a", true);
+        coalescer.add(0, "b", true);
+        coalescer.add(0, "c", true);
+        coalescer.add(0, "d", true);
+        awaitStripes();
+        Assert.assertEquals("[0:3]", applied.toString());
+        Assert.assertEquals(1, coalescer.getPending());
+        Assert.assertEquals(3, games[0].getCurrent());
+    }
+
+    private void awaitStripes() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        stripes.afterPending(new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+}
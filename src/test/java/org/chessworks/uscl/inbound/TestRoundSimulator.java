@@ -0,0 +1,48 @@
+package org.chessworks.uscl.inbound;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.chessworks.uscl.model.Game;
+import org.chessworks.uscl.services.simple.SimpleTournamentService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import free.chessclub.level2.Datagram;
+
+public class TestRoundSimulator {
+
+    @Test
+    public void testScheduleAndWrite() throws Exception {
+        RoundSimulator simulator = new RoundSimulator(6, 3, 10, 100, 42);
+        SimpleTournamentService service = new SimpleTournamentService();
+        simulator.schedule(service);
+        Assert.assertEquals(6, service.findAllGames().size());
+        Assert.assertEquals(4, service.findAllTeams().size());
+        Game game = service.findGame(5);
+        Assert.assertEquals("SAC", game.whitePlayer.getTeam().getTeamCode());
+        Assert.assertEquals("SAD", game.blackPlayer.getTeam().getTeamCode());
+
+        File file = File.createTempFile("round", ".dg");
+        file.deleteOnExit();
+        int written = simulator.write(file);
+
+        final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        DatagramDispatcher dispatcher = new DatagramDispatcher(null) {
+
+            @Override
+            public void receive(Datagram datagram) {
+                Integer n = counts.get(datagram.getId());
+                counts.put(datagram.getId(), (n == null) ? 1 : n + 1);
+            }
+        };
+        long replayed = new DatagramReplayer(file, false).replay(dispatcher, null);
+        Assert.assertEquals(written, replayed);
+        Assert.assertEquals(60, (int) counts.get(Datagram.DG_SEND_MOVES));
+        Assert.assertEquals(36, (int) counts.get(Datagram.DG_PLAYERS_IN_MY_GAME));
+        Assert.assertEquals(6, (int) counts.get(Datagram.DG_MY_GAME_RESULT));
+        Assert.assertEquals(12, (int) counts.get(Datagram.DG_NOTIFY_ARRIVED));
+    }
+
+}
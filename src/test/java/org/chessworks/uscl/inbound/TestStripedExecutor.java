@@ -0,0 +1,209 @@
+package org.chessworks.uscl.inbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedExecutor {
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void testUrgentTasksGoFirst() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(1, "test");
+        CountDownLatch gate = block(stripes);
+        stripes.execute("game", InboundPriority.BULK, record("bulk1"));
+        stripes.execute("game", InboundPriority.BULK, record("bulk2"));
+        stripes.execute("player", InboundPriority.STATE, record("state"));
+        stripes.execute("manager", InboundPriority.URGENT, record("tell"));
+        Assert.assertEquals(4, stripes.getQueuedTasks(0));
+        Assert.assertEquals(2, stripes.getQueuedTasks(InboundPriority.BULK));
+        gate.countDown();
+        await(stripes);
+        Assert.assertEquals("[tell, state, bulk1, bulk2]", ran.toString());
+        Assert.assertEquals(2, stripes.getStartedTasks(InboundPriority.BULK));
+        Assert.assertEquals(2, stripes.getMaxQueuedTasks(InboundPriority.BULK));
+        Assert.assertTrue(stripes.getMaxWaitMillis(InboundPriority.BULK) >= stripes.getAverageWaitMillis(InboundPriority.BULK));
+    }
+
+    @Test
+    public void testUrgentTaskWaitsForItsKey() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(1, "test");
+        CountDownLatch gate = block(stripes);
+        stripes.execute("other", InboundPriority.STATE, record("other"));
+        stripes.execute("game", InboundPriority.BULK, record("observers"));
+        stripes.execute("game", InboundPriority.URGENT, record("result"));
+        gate.countDown();
+        await(stripes);
+        Assert.assertEquals("[observers, result, other]", ran.toString());
+    }
+
+    @Test
+    public void testAfterPendingWaitsForAllLanes() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(2, "test");
+        CountDownLatch gate = block(stripes);
+        for (int i = 0; i < 10; i++) {
+            stripes.execute(i, InboundPriority.BULK, record("bulk"));
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        stripes.afterPending(new Runnable() {
+
+            @Override
+            public void run() {
+                ran.add("done");
+                done.countDown();
+            }
+        });
+        stripes.execute(0, InboundPriority.URGENT, record("urgent"));
+        gate.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(ran.indexOf("done") >= 10);
+    }
+
+    @Test
+    public void testExclusiveTaskHoldsEveryStripe() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(4, "test");
+        final AtomicInteger running = new AtomicInteger();
+        Runnable busy = new Runnable() {
+
+            @Override
+            public void run() {
+                running.incrementAndGet();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        Runnable check = new Runnable() {
+
+            @Override
+            public void run() {
+                ran.add(String.valueOf(running.get()));
+            }
+        };
+        for (int i = 0; i < 200; i++) {
+            stripes.execute(i % 16, InboundPriority.STATE, busy);
+            if (i % 20 == 0) {
+                stripes.executeExclusive(InboundPriority.URGENT, check);
+            }
+        }
+        await(stripes);
+        Assert.assertEquals(10, ran.size());
+        for (String count : ran) {
+            Assert.assertEquals("0", count);
+        }
+    }
+
+    @Test
+    public void testExclusiveTasksRunInOrder() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(3, "test");
+        CountDownLatch gate = block(stripes);
+        for (int i = 0; i < 5; i++) {
+            stripes.execute(i, InboundPriority.BULK, record("bulk"));
+            stripes.executeExclusive(InboundPriority.URGENT, record("tell" + i));
+        }
+        gate.countDown();
+        await(stripes);
+        Assert.assertEquals("[tell0, tell1, tell2, tell3, tell4, bulk, bulk, bulk, bulk, bulk]", ran.toString());
+    }
+
+    @Test
+    public void testStripeSurvivesErrors() throws InterruptedException {
+        StripedExecutor stripes = new StripedExecutor(1, "test");
+        stripes.execute("game", new Runnable() {
+
+            @Override
+            public void run() {
+                throw new AssertionError("Thrown on purpose by the test.");
+            }
+        });
+        stripes.execute("game", record("after"));
+        await(stripes);
+        Assert.assertEquals("[after]", ran.toString());
+        Assert.assertEquals(0, stripes.getQueuedTasks(0));
+        Assert.assertEquals(2, stripes.getCompletedTasks(0));
+    }
+
+    @Test
+    public void testShutdownRejectsTasks() {
+        StripedExecutor stripes = new StripedExecutor(1, "test");
+        stripes.shutdown();
+        try {
+            stripes.execute("key", record("late"));
+            Assert.fail("Expected a RejectedExecutionException.");
+        } catch (RejectedExecutionException e) {
+            // Expected.
+        }
+        try {
+            stripes.executeExclusive(InboundPriority.URGENT, record("late"));
+            Assert.fail("Expected a RejectedExecutionException.");
+        } catch (RejectedExecutionException e) {
+            // Expected.
+        }
+    }
+
+    /** Occupies every stripe until the returned latch is released, so tasks queue up behind it. */
+    private CountDownLatch block(StripedExecutor stripes) throws InterruptedException {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(stripes.getStripeCount());
+        for (int i = 0; i < stripes.getStripeCount(); i++) {
+            Object key = findKey(stripes, i);
+            stripes.execute(key, InboundPriority.URGENT, new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        return gate;
+    }
+
+    private static Object findKey(StripedExecutor stripes, int stripe) {
+        for (int i = 1000;; i++) {
+            if (stripes.stripeOf(i) == stripe) {
+                return i;
+            }
+        }
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+
+    private static void await(StripedExecutor stripes) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        stripes.afterPending(new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.chessworks.uscl.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMoveList {
+
+    @Test
+    public void testSmithRoundTrip() {
+        String[] moves = { "e2e4", "e4d5p", "e1g1c", "e8c8C", "e5d6E", "b7a8nQ", "a7a8N" };
+        for (String move : moves) {
+            Assert.assertEquals(move, MoveList.toSmith(MoveList.parseSmith(move)));
+        }
+    }
+
+    @Test
+    public void testPackedFields() {
+        int move = MoveList.parseSmith("b7a8nQ");
+        Assert.assertEquals(49, MoveList.getFrom(move));
+        Assert.assertEquals(56, MoveList.getTo(move));
+        Assert.assertEquals(MoveList.KNIGHT, MoveList.getCapture(move));
+        Assert.assertEquals(MoveList.QUEEN, MoveList.getPromotion(move));
+        Assert.assertEquals(0, MoveList.getFlag(move));
+    }
+
+    @Test
+    public void testGrowAndTakeBack() {
+        MoveList list = new MoveList();
+        for (int i = 0; i < 200; i++) {
+            list.addSmith((i % 2 == 0) ? "g1f3" : "f3g1");
+        }
+        Assert.assertEquals(200, list.size());
+        list.back(3);
+        Assert.assertEquals(197, list.size());
+        Assert.assertEquals("g1f3", MoveList.toSmith(list.get(196)));
+        list.back(500);
+        Assert.assertEquals(0, list.size());
+        list.addSmith("e2e4");
+        list.addSmith("c7c5");
+        Assert.assertEquals("e2e4 c7c5", list.toString());
+    }
+
+    @Test
+    public void testInvalidMove() {
+        try {
+            MoveList.parseSmith("e2e9");
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.chessworks.uscl.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestObserverStats {
+
+    @Test
+    public void testCurrentAndPeak() {
+        ObserverStats stats = new ObserverStats();
+        stats.observerArrived("a");
+        stats.observerArrived("b");
+        stats.observerArrived("c");
+        stats.observerLeft("b");
+        stats.observerArrived("b");
+        stats.observerLeft("a");
+        Assert.assertEquals(2, stats.getCurrent());
+        Assert.assertEquals(3, stats.getPeak());
+        Assert.assertEquals(3, stats.getUnique());
+    }
+
+    @Test
+    public void testUniqueIgnoresCase() {
+        ObserverStats stats = new ObserverStats();
+        stats.observerArrived("Shirov-NYC");
+        stats.observerLeft("Shirov-NYC");
+        stats.observerArrived("shirov-nyc");
+        ObserverStats.Batch batch = new ObserverStats.Batch();
+        batch.add("SHIROV-NYC", true, System.nanoTime());
+        stats.apply(batch);
+        Assert.assertEquals(1, stats.getUnique());
+    }
+
+    @Test
+    public void testLeavingWithoutObserversIsIgnored() {
+        ObserverStats stats = new ObserverStats();
+        stats.observerLeft("a");
+        Assert.assertEquals(0, stats.getCurrent());
+        stats.observerArrived("a");
+        Assert.assertEquals(1, stats.getCurrent());
+    }
+
+    @Test
+    public void testAverage() throws InterruptedException {
+        ObserverStats stats = new ObserverStats();
+        stats.observerArrived("a");
+        stats.observerArrived("b");
+        Thread.sleep(50);
+        Assert.assertEquals(2.0, stats.getAverage(), 0.2);
+        stats.observerLeft("a");
+        stats.observerLeft("b");
+        Thread.sleep(50);
+        Assert.assertEquals(1.0, stats.getAverage(), 0.3);
+    }
+
+    @Test
+    public void testBatch() {
+        ObserverStats stats = new ObserverStats();
+        stats.observerArrived("a");
+        ObserverStats.Batch batch = new ObserverStats.Batch();
+        long now = System.nanoTime();
+        batch.add("b", true, now);
+        batch.add("c", true, now);
+        batch.add("a", false, now);
+        batch.add("b", false, now);
+        Assert.assertEquals(4, batch.size());
+        stats.apply(batch);
+        Assert.assertEquals(1, stats.getCurrent());
+        Assert.assertEquals(3, stats.getPeak());
+        Assert.assertEquals(3, stats.getUnique());
+        Assert.assertEquals(1.0, stats.getAverage(), 0.5);
+    }
+
+    @Test
+    public void testBatchLeavingWithoutObserversIsIgnored() {
+        ObserverStats stats = new ObserverStats();
+        ObserverStats.Batch batch = new ObserverStats.Batch();
+        long now = System.nanoTime();
+        batch.add("a", false, now);
+        batch.add("b", false, now);
+        stats.apply(batch);
+        Assert.assertEquals(0, stats.getCurrent());
+        Assert.assertEquals(0, stats.getPeak());
+        Assert.assertEquals(0.0, stats.getAverage(), 0.01);
+    }
+
+    @Test
+    public void testReset() {
+        ObserverStats stats = new ObserverStats();
+        stats.observerArrived("a");
+        stats.reset();
+        Assert.assertEquals(0, stats.getCurrent());
+        Assert.assertEquals(0, stats.getPeak());
+        Assert.assertEquals(0, stats.getUnique());
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.chessworks.uscl.model;
+
+import org.chessworks.chess.model.RatingCategory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTeam {
+
+    private static final RatingCategory USCL = new RatingCategory("USCL");
+
+    private final Team team = new Team("NYC");
+
+    @Test
+    public void testRoster() {
+        Player a = new Player("A-NYC", team);
+        Player b = new Player("B-NYC", team);
+        Assert.assertTrue(team.addPlayer(b));
+        Assert.assertTrue(team.addPlayer(a));
+        Assert.assertFalse(team.addPlayer(b));
+        Assert.assertEquals("[B-NYC, A-NYC]", team.getPlayers().toString());
+        Assert.assertTrue(team.removePlayer(b));
+        Assert.assertFalse(team.removePlayer(b));
+        Assert.assertEquals("[A-NYC]", team.getPlayers().toString());
+        try {
+            team.getPlayers().add(b);
+            Assert.fail("The roster should be read-only.");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testPlayersByRating() {
+        player("A-NYC", 2400);
+        Player b = player("B-NYC", 2600);
+        Player c = player("C-NYC", null);
+        player("D-NYC", 2400);
+        Assert.assertEquals("[B-NYC, A-NYC, D-NYC, C-NYC]", team.getPlayersByRating(USCL).toString());
+        Assert.assertSame(team.getPlayersByRating(USCL), team.getPlayersByRating(USCL));
+        c.ratings().put(USCL, 2700);
+        team.ratingsChanged();
+        Assert.assertEquals("[C-NYC, B-NYC, A-NYC, D-NYC]", team.getPlayersByRating(USCL).toString());
+        team.removePlayer(b);
+        Assert.assertEquals("[C-NYC, A-NYC, D-NYC]", team.getPlayersByRating(USCL).toString());
+    }
+
+    private Player player(String handle, Integer rating) {
+        Player p = new Player(handle, team);
+        if (rating != null) {
+            p.ratings().put(USCL, rating);
+        }
+        team.addPlayer(p);
+        return p;
+    }
+
+}
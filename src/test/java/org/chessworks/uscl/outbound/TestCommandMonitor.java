@@ -0,0 +1,50 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCommandMonitor {
+
+    /** Strips the "HH:mm:ss " time stamp from each line. */
+    private static String commandAt(List<String> lines, int i) {
+        return lines.get(i).substring(9);
+    }
+
+    @Test
+    public void testTailReturnsMostRecentOldestFirst() {
+        CommandMonitor monitor = new CommandMonitor(10);
+        for (int i = 0; i < 5; i++) {
+            monitor.record("cmd " + i);
+        }
+        List<String> tail = monitor.tail(3, "");
+        Assert.assertEquals(3, tail.size());
+        Assert.assertEquals("cmd 2", commandAt(tail, 0));
+        Assert.assertEquals("cmd 4", commandAt(tail, 2));
+    }
+
+    @Test
+    public void testRingBufferWrapsAround() {
+        CommandMonitor monitor = new CommandMonitor(4);
+        for (int i = 0; i < 10; i++) {
+            monitor.record("cmd " + i);
+        }
+        List<String> tail = monitor.tail(100, "");
+        Assert.assertEquals(4, tail.size());
+        Assert.assertEquals("cmd 6", commandAt(tail, 0));
+        Assert.assertEquals("cmd 9", commandAt(tail, 3));
+    }
+
+    @Test
+    public void testFilterIgnoresCase() {
+        CommandMonitor monitor = new CommandMonitor(10);
+        monitor.record("spoof Shirov-NYC set busy 2");
+        monitor.record("tell 129 hello");
+        monitor.record("SPOOF Ivanchuk-LA set busy 2");
+        List<String> tail = monitor.tail(10, " Spoof ");
+        Assert.assertEquals(2, tail.size());
+        Assert.assertEquals("SPOOF Ivanchuk-LA set busy 2", commandAt(tail, 1));
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestOutboundQueue {
+
+    private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+
+    private final OutboundQueue.Sink sink = new OutboundQueue.Sink() {
+
+        @Override
+        public void write(String command) {
+            written.add(command);
+        }
+    };
+
+    @Test
+    public void testSubmitNeverWaits() {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1, 1), 2);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(queue.submit(Priority.CRITICAL, unit("tell " + i)));
+        }
+        Assert.assertEquals(5, queue.getQueuedUnits(Priority.CRITICAL));
+        Assert.assertEquals(3, queue.getOverCapacityUnits(Priority.CRITICAL));
+        Assert.assertEquals(0, queue.getDroppedUnits(Priority.CRITICAL));
+    }
+
+    @Test
+    public void testFullBulkLaneDrops() {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1, 1), 2);
+        Assert.assertTrue(queue.submit(Priority.BULK, unit("set-other a 1")));
+        Assert.assertTrue(queue.submit(Priority.BULK, unit("set-other b 1")));
+        Assert.assertFalse(queue.submit(Priority.BULK, unit("set-other c 1")));
+        Assert.assertEquals(2, queue.getQueuedUnits(Priority.BULK));
+        Assert.assertEquals(1, queue.getDroppedUnits(Priority.BULK));
+        Assert.assertTrue(queue.submit(Priority.ANNOUNCEMENT, unit("sshout hi")));
+    }
+
+    @Test
+    public void testFlushIgnoresTheRateLimit() {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1, 1), 100);
+        for (int i = 0; i < 20; i++) {
+            queue.submit(Priority.BULK, unit("set-other " + i + " 1"));
+        }
+        queue.submit(Priority.CRITICAL, unit("tell Shirov-NYC Bye!"));
+        queue.start();
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertTrue(queue.isIdle());
+        Assert.assertEquals(21, written.size());
+        Assert.assertEquals("tell Shirov-NYC Bye!", written.get(0));
+    }
+
+    @Test
+    public void testHigherLanesGoFirst() {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1000, 1000), 100);
+        queue.submit(Priority.BULK, unit("bulk 1"));
+        queue.submit(Priority.ANNOUNCEMENT, unit("announce 1"));
+        queue.submit(Priority.CRITICAL, unit("critical 1"));
+        queue.submit(Priority.BULK, unit("bulk 2"));
+        queue.submit(Priority.CRITICAL, unit("critical 2"));
+        queue.start();
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertEquals("[critical 1, critical 2, announce 1, bulk 1, bulk 2]", written.toString());
+        Assert.assertEquals(2, queue.getWrittenUnits(Priority.CRITICAL));
+        Assert.assertEquals(2, queue.getMaxQueuedUnits(Priority.BULK));
+    }
+
+    @Test
+    public void testUnitsAreWrittenWhole() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1000, 1), 100);
+        queue.start();
+        queue.submit(Priority.BULK, unit("admin secret", "set-other a 1", "set-other a 2", "admin"));
+        queue.submit(Priority.CRITICAL, unit("tell a hi"));
+        Assert.assertTrue(queue.flush(5000));
+        int admin = written.indexOf("admin secret");
+        Assert.assertEquals(Arrays.asList("admin secret", "set-other a 1", "set-other a 2", "admin"), written.subList(admin, admin + 4));
+        Assert.assertEquals(5, written.size());
+        Assert.assertEquals(4, queue.getWrittenCommands(Priority.BULK));
+    }
+
+    @Test
+    public void testRateLimitHoldsBackCommands() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1, 2), 100);
+        queue.start();
+        for (int i = 0; i < 5; i++) {
+            queue.submit(Priority.CRITICAL, unit("tell " + i));
+        }
+        Thread.sleep(200);
+        Assert.assertEquals(2, written.size());
+        Assert.assertEquals(3, queue.getQueuedUnits(Priority.CRITICAL));
+    }
+
+    @Test
+    public void testDatagramLatencyIsRecordedOnceWritten() {
+        OutboundQueue queue = new OutboundQueue(sink, new TokenBucket(1000, 1000), 100);
+        long received = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+        queue.submit(Priority.CRITICAL, unit("tell Shirov-NYC Hi"), received);
+        queue.submit(Priority.CRITICAL, unit("tell Kasparov-NYC Hi"));
+        Assert.assertEquals(0, queue.getDatagramLatency().getCount());
+        queue.start();
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertEquals(1, queue.getDatagramLatency().getCount());
+        Assert.assertTrue(queue.getDatagramLatency().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private static List<String> unit(String... commands) {
+        return Arrays.asList(commands);
+    }
+
+}
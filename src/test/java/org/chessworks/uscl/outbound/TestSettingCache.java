@@ -0,0 +1,87 @@
+package org.chessworks.uscl.outbound;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSettingCache {
+
+    @Test
+    public void testRepeatedSettingIsRedundant() {
+        SettingCache cache = new SettingCache(60000);
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set busy 2"));
+        cache.record("Shirov-NYC", "set busy 2");
+        Assert.assertTrue(cache.isRedundant("shirov-nyc", "set busy 2"));
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set busy 0"));
+        Assert.assertEquals(1, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void testForgottenSettingIsSentAgain() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("Shirov-NYC", "set busy 2");
+        cache.record("Shirov-NYC", "set kib 0");
+        cache.forget("USCL-Bot", "set-other Shirov-NYC busy 2");
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set busy 2"));
+        Assert.assertTrue(cache.isRedundant("Shirov-NYC", "set kib 0"));
+    }
+
+    @Test
+    public void testQsetIsKeyedByTarget() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("jimmys", "qset Shirov-NYC isolated 1");
+        Assert.assertTrue(cache.isRedundant("USCL-Bot", "qset Shirov-NYC isolated 1"));
+        Assert.assertFalse(cache.isRedundant("USCL-Bot", "qset Shirov-NYC isolated 0"));
+    }
+
+    @Test
+    public void testSetOtherMatchesSpoofedSet() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("Shirov-NYC", "set kib 0");
+        Assert.assertTrue(cache.isRedundant("USCL-Bot", "set-other Shirov-NYC kib 0"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("Shirov-NYC", "set busy 2");
+        cache.invalidate("SHIROV-NYC");
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set busy 2"));
+    }
+
+    @Test
+    public void testFingerNotesAreSentAgainAfterInvalidate() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("USCL-Bot", "set-other Shirov-NYC 1 Name: GM Alexei Shirov");
+        Assert.assertTrue(cache.isRedundant("USCL-Bot", "set-other Shirov-NYC 1 Name: GM Alexei Shirov"));
+        cache.invalidate("Shirov-NYC");
+        Assert.assertFalse(cache.isRedundant("USCL-Bot", "set-other Shirov-NYC 1 Name: GM Alexei Shirov"));
+    }
+
+    @Test
+    public void testClearNotify() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("USCL-Bot", "+notify Shirov-NYC");
+        cache.record("USCL-Bot", "set style 13");
+        Assert.assertTrue(cache.isRedundant("USCL-Bot", "+notify Shirov-NYC"));
+        cache.record("USCL-Bot", "-notify *");
+        Assert.assertFalse(cache.isRedundant("USCL-Bot", "+notify Shirov-NYC"));
+        Assert.assertTrue(cache.isRedundant("USCL-Bot", "set style 13"));
+    }
+
+    @Test
+    public void testWindowExpires() {
+        SettingCache cache = new SettingCache(-1);
+        cache.record("Shirov-NYC", "set busy 2");
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set busy 2"));
+    }
+
+    @Test
+    public void testOtherCommandsAreNeverRedundant() {
+        SettingCache cache = new SettingCache(60000);
+        cache.record("Shirov-NYC", "tell JudgeBot nowin");
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "tell JudgeBot nowin"));
+        cache.record("Shirov-NYC", "set kib 0; set busy 2");
+        Assert.assertFalse(cache.isRedundant("Shirov-NYC", "set kib 0; set busy 2"));
+    }
+
+}
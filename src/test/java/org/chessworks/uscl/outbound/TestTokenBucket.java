@@ -0,0 +1,60 @@
+package org.chessworks.uscl.outbound;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTokenBucket {
+
+    @Test
+    public void testBurstIsGrantedAtOnce() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, bucket.tryAcquire(1));
+        }
+        long wait = bucket.tryAcquire(1);
+        Assert.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900));
+        Assert.assertTrue(wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testLargeUnitGoesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        Assert.assertEquals(0, bucket.tryAcquire(10));
+        /* Five tokens owed, plus the one the next request needs. */
+        long wait = bucket.tryAcquire(1);
+        Assert.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(5900));
+        Assert.assertTrue(wait <= TimeUnit.SECONDS.toNanos(6));
+    }
+
+    @Test
+    public void testRateIsHeld() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        long start = System.nanoTime();
+        int granted = 0;
+        while (granted < 110) {
+            long wait = bucket.tryAcquire(1);
+            if (wait == 0) {
+                granted++;
+            } else {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        /* The first ten go out at once, and the other hundred at one per millisecond. */
+        Assert.assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 95);
+        Assert.assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void testBucketNeverHoldsMoreThanItsCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 3);
+        Thread.sleep(50);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, bucket.tryAcquire(1));
+        }
+        Assert.assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.chessworks.uscl.services.simple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.chessworks.chess.model.PlayerState;
+import org.chessworks.uscl.model.Game;
+import org.chessworks.uscl.model.GameState;
+import org.chessworks.uscl.model.Player;
+import org.chessworks.uscl.model.Team;
+import org.chessworks.uscl.services.InvalidTeamException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSimpleTournamentService {
+
+    private final SimpleTournamentService service = new SimpleTournamentService();
+    private final Team nyc;
+    private final Team bos;
+    private final Team dal;
+
+    public TestSimpleTournamentService() throws InvalidTeamException {
+        nyc = service.createTeam("NYC");
+        bos = service.createTeam("BOS");
+        dal = service.createTeam("DAL");
+    }
+
+    @Test
+    public void testFindMatchGamesInBoardOrder() throws Exception {
+        service.scheduleGame(12, 2, player("B2-BOS"), player("N2-NYC"));
+        service.scheduleGame(11, 1, player("N1-NYC"), player("B1-BOS"));
+        service.scheduleGame(20, 3, player("D1-DAL"), player("X1-NYC"));
+        Assert.assertEquals("[11, 12]", boards(service.findMatchGames(nyc, bos)));
+        Assert.assertEquals("[11, 12]", boards(service.findMatchGames(bos, nyc)));
+        Assert.assertEquals("[20]", boards(service.findMatchGames(dal, nyc)));
+        Assert.assertTrue(service.findMatchGames(bos, dal).isEmpty());
+    }
+
+    @Test
+    public void testCancelAndReplaceGames() throws Exception {
+        Game g11 = service.scheduleGame(11, 1, player("N1-NYC"), player("B1-BOS"));
+        service.scheduleGame(12, 2, player("N2-NYC"), player("B2-BOS"));
+        service.cancelGame(g11);
+        Assert.assertEquals("[12]", boards(service.findMatchGames(nyc, bos)));
+        service.scheduleGame(12, 2, player("N3-NYC"), player("D1-DAL"));
+        Assert.assertTrue(service.findMatchGames(nyc, bos).isEmpty());
+        Assert.assertEquals("[12]", boards(service.findMatchGames(nyc, dal)));
+        service.clearSchedule();
+        Assert.assertTrue(service.findMatchGames(nyc, dal).isEmpty());
+    }
+
+    @Test
+    public void testSubstituteMovesGameToNewMatch() throws Exception {
+        Game game = service.scheduleGame(11, 1, player("N1-NYC"), player("B1-BOS"));
+        game.blackPlayer = player("D1-DAL");
+        service.updateGameStatus(game, GameState.PLAYING);
+        Assert.assertTrue(service.findMatchGames(nyc, bos).isEmpty());
+        Assert.assertEquals("[11]", boards(service.findMatchGames(nyc, dal)));
+    }
+
+    @Test
+    public void testOnlinePlayers() throws Exception {
+        Player n1 = player("N1-NYC");
+        Player b1 = player("B1-BOS");
+        Player d1 = player("D1-DAL");
+        service.updatePlayerState(n1, PlayerState.WAITING);
+        service.updatePlayerState(b1, PlayerState.PLAYING);
+        service.updatePlayerState(d1, PlayerState.OBSERVING);
+        Collection<Player> snapshot = service.findOnlinePlayers();
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals(b1, snapshot.iterator().next());
+        service.updatePlayerState(b1, PlayerState.OFFLINE);
+        service.removePlayer(d1);
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals(1, service.findOnlinePlayers().size());
+        Assert.assertTrue(service.findOnlinePlayers().contains(n1));
+        Assert.assertSame(service.findOnlinePlayers(), service.findOnlinePlayers());
+        /* A player already online doesn't change the players online. */
+        Collection<Player> unchanged = service.findOnlinePlayers();
+        service.updatePlayerState(n1, PlayerState.PLAYING);
+        Assert.assertSame(unchanged, service.findOnlinePlayers());
+    }
+
+    @Test
+    public void testScheduledPlayersSnapshot() throws Exception {
+        Player n1 = player("N1-NYC");
+        Player b1 = player("B1-BOS");
+        Game game = service.scheduleGame(11, 1, n1, b1);
+        Collection<Player> snapshot = service.findScheduledPlayers();
+        Assert.assertEquals("[B1-BOS, N1-NYC]", snapshot.toString());
+        Assert.assertSame(snapshot, service.findScheduledPlayers());
+        service.scheduleGame(12, 2, player("N2-NYC"), player("B2-BOS"));
+        Assert.assertEquals(4, service.findScheduledPlayers().size());
+        service.cancelGame(game);
+        Assert.assertEquals("[B2-BOS, N2-NYC]", service.findScheduledPlayers().toString());
+        Assert.assertEquals(2, snapshot.size());
+        service.clearSchedule();
+        Assert.assertTrue(service.findScheduledPlayers().isEmpty());
+    }
+
+    @Test
+    public void testCancelGame() throws Exception {
+        Player n1 = player("N1-NYC");
+        Player b1 = player("B1-BOS");
+        Game game = service.scheduleGame(11, 1, n1, b1);
+        Assert.assertSame(game, service.cancelGame(game));
+        Assert.assertNull(service.cancelGame(game));
+        Assert.assertNull(service.findGame(11));
+        Assert.assertNull(service.findPlayerGame(n1));
+        Assert.assertNull(service.cancelGame(new Game(11, 1, n1, b1)));
+    }
+
+    @Test
+    public void testRescheduleBoard() throws Exception {
+        Player n1 = player("N1-NYC");
+        Player b1 = player("B1-BOS");
+        Player n2 = player("N2-NYC");
+        Game old = service.scheduleGame(11, 1, n1, b1);
+        Game game = service.scheduleGame(11, 1, n2, b1);
+        Assert.assertSame(game, service.findGame(11));
+        Assert.assertNull(service.findPlayerGame(n1));
+        Assert.assertSame(game, service.findPlayerGame(b1));
+        Assert.assertNull(service.cancelGame(old));
+        Assert.assertSame(game, service.cancelGame(b1));
+        Assert.assertTrue(service.findScheduledPlayers().isEmpty());
+        Assert.assertTrue(service.findAllGames().isEmpty());
+    }
+
+    private Player player(String handle) throws Exception {
+        return service.findOrCreatePlayer(handle);
+    }
+
+    private static String boards(Collection<Game> games) {
+        List<Integer> boards = new ArrayList<Integer>();
+        for (Game game : games) {
+            boards.add(game.boardNumber);
+        }
+        return boards.toString();
+    }
+
+}
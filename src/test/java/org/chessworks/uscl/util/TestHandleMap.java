@@ -0,0 +1,51 @@
+package org.chessworks.uscl.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHandleMap {
+
+    @Test
+    public void testIgnoresCase() {
+        HandleMap<String> map = new HandleMap<String>();
+        Assert.assertNull(map.put("DuckStorm-ICC", "a"));
+        Assert.assertEquals("a", map.get("duckstorm-icc"));
+        Assert.assertEquals("a", map.get("DUCKSTORM-ICC"));
+        Assert.assertTrue(map.containsKey("dUCKsTORM-icc"));
+        Assert.assertNull(map.get("DuckStorm-IC"));
+        Assert.assertEquals("a", map.put("DUCKSTORM-ICC", "b"));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("b", map.remove("duckstorm-ICC"));
+        Assert.assertNull(map.get("DuckStorm-ICC"));
+        Assert.assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        HandleMap<Integer> map = new HandleMap<Integer>(4);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            String handle = "Player" + random.nextInt(500) + "-T" + (char) ('A' + random.nextInt(3));
+            String lookup = (random.nextBoolean()) ? handle.toUpperCase() : handle.toLowerCase();
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(handle.toLowerCase()), map.remove(lookup));
+            } else {
+                Assert.assertEquals(expected.put(handle.toLowerCase(), i), map.put(lookup, i));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        for (int i = 0; i < 500; i++) {
+            String handle = "player" + i + "-ta";
+            Assert.assertEquals(expected.get(handle), map.get(handle));
+        }
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get("Player1-TA"));
+    }
+
+}
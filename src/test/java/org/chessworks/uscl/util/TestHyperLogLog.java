@@ -0,0 +1,50 @@
+package org.chessworks.uscl.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHyperLogLog {
+
+    private static void assertEstimate(int distinct) {
+        HyperLogLog hll = new HyperLogLog();
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (int i = 0; i < distinct; i++) {
+                hll.add("Observer" + i);
+            }
+        }
+        long estimate = hll.estimate();
+        Assert.assertEquals("distinct=" + distinct, distinct, estimate, Math.max(2, distinct * 0.1));
+    }
+
+    @Test
+    public void testEstimates() {
+        assertEstimate(0);
+        assertEstimate(1);
+        assertEstimate(50);
+        assertEstimate(1000);
+        assertEstimate(100000);
+    }
+
+    @Test
+    public void testAddIgnoreCase() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.addIgnoreCase("Shirov-NYC");
+        hll.addIgnoreCase("shirov-nyc");
+        hll.addIgnoreCase("SHIROV-NYC");
+        Assert.assertEquals(1, hll.estimate());
+        /* Ignoring case, a handle is counted as its lower case form. */
+        hll.add("shirov-nyc");
+        Assert.assertEquals(1, hll.estimate());
+        hll.add("Shirov-NYC");
+        Assert.assertEquals(2, hll.estimate());
+    }
+
+    @Test
+    public void testClear() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.add("Shirov-NYC");
+        hll.clear();
+        Assert.assertEquals(0, hll.estimate());
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.chessworks.uscl.util;
+
+import java.text.MessageFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMessageTemplate {
+
+    private static void assertSameAsMessageFormat(String pattern, Object... args) {
+        String expected = MessageFormat.format(pattern, args);
+        String actual = MessageTemplate.format(pattern, args);
+        Assert.assertEquals(pattern, expected, actual);
+    }
+
+    @Test
+    public void testPlainArguments() {
+        assertSameAsMessageFormat("tell {0} {1}", "Shirov-NYC", "Hello there");
+        assertSameAsMessageFormat("{0} vs {1}: {2} on board {3}.  To watch, type or click: \"observe {3}\".", "A", "B", "Started", 12);
+        assertSameAsMessageFormat("{1}{0}", "a", "b");
+        assertSameAsMessageFormat("no arguments at all", "unused");
+    }
+
+    @Test
+    public void testQuotes() {
+        assertSameAsMessageFormat("I don''t understand.", "x");
+        assertSameAsMessageFormat("Done.  Player {0} is no longer in the tournament.", "Shirov-NYC");
+        assertSameAsMessageFormat("'{0}' is literal, {0} is not", "x");
+        assertSameAsMessageFormat("It''s '{quoted}'' text' {0}", "x");
+        assertSameAsMessageFormat("unterminated 'quote {0}", "x");
+    }
+
+    @Test
+    public void testArgumentValues() {
+        assertSameAsMessageFormat("{0} {1} {2} {3}", 5, -12, 1234567, 1.5);
+        assertSameAsMessageFormat("{0} {1}", null, Boolean.TRUE);
+        assertSameAsMessageFormat("{0} and {5}", "only one");
+        assertSameAsMessageFormat("{00} {01}", "x", "y");
+        assertSameAsMessageFormat("{0}}", "x");
+    }
+
+    @Test
+    public void testFormatTypesAreDelegated() {
+        assertSameAsMessageFormat("{0,number,#} {1,number,integer}", 12345, 6789);
+        assertSameAsMessageFormat("{0,choice,0#none|1#one|1<many}", 2);
+    }
+
+    @Test
+    public void testCompiledTemplatesAreCached() {
+        MessageTemplate t1 = MessageTemplate.compile("qtell {0} {1}\\n");
+        MessageTemplate t2 = MessageTemplate.compile("qtell {0} {1}\\n");
+        Assert.assertSame(t1, t2);
+        Assert.assertEquals("qtell x y\\n", t1.render("x", "y"));
+    }
+
+}
@@ -0,0 +1,36 @@
+package org.chessworks.uscl.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSlidingWindowCounter {
+
+    @Test
+    public void testCountsWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.increment(1000);
+        counter.increment(1500);
+        counter.increment(5000);
+        Assert.assertEquals(3, counter.count(5000));
+        Assert.assertEquals(3, counter.count(10999));
+    }
+
+    @Test
+    public void testOldEventsExpire() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.increment(1000);
+        counter.increment(5000);
+        Assert.assertEquals(1, counter.count(11000));
+        Assert.assertEquals(0, counter.count(15000));
+    }
+
+    @Test
+    public void testBucketsAreReused() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 10);
+        counter.increment(1000);
+        counter.increment(11000);
+        counter.increment(11500);
+        Assert.assertEquals(2, counter.count(11500));
+    }
+
+}